@@ -1,18 +1,13 @@
 package solver;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.function.IntSupplier;
 
 public final class AssignCache {
     private static final int CAP = 8192;
-    private static final LinkedHashMap<Long, Integer> map = new LinkedHashMap<>(CAP, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
-            return size() > CAP;
-        }
-    };
+    private static final ThreadLru<Integer> map = new ThreadLru<>(CAP);
     private static final long P = 1099511628211L;
+    static final long SQUARED = 1469598103934665603L;
+    static final long LINEAR = 0x6c62272e07bb0142L;
 
     private AssignCache() {}
 
@@ -21,7 +16,11 @@ public final class AssignCache {
     }
 
     public static int getOrCompute(Coordinate[] sortedBoxes, IntSupplier compute) {
-        long key = 1469598103934665603L;
+        return getOrCompute(SQUARED, sortedBoxes, compute);
+    }
+
+    static int getOrCompute(long seed, Coordinate[] sortedBoxes, IntSupplier compute) {
+        long key = seed;
         for (Coordinate c : sortedBoxes) {
             key = (key ^ c.x) * P;
             key = (key ^ c.y) * P;
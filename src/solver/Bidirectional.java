@@ -0,0 +1,332 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public final class Bidirectional implements SearchEngine {
+    public static int FORWARD_WEIGHT = 3;
+    public static int BACKWARD_WEIGHT = 3;
+
+    private final Coordinate[] goalCoordinates;
+    private final char[][] mapData;
+    private final Deadlock deadlockDetector;
+    private final SearchStats stats = new SearchStats();
+    private final long timeBudgetNanos;
+    private final PushExpander expander;
+    private final GridKernel grid;
+
+    private final HashMap<Long, Meeting> table = new HashMap<>();
+    private final PriorityQueue<State> forwardOpen;
+    private final PriorityQueue<PullNode> backwardOpen;
+    private boolean[] startCell;
+    private int[] startDistance;
+    private long sequence;
+    private int solutionPushes;
+    private char[][] initialItems;
+    private long deadline;
+    private boolean expired;
+    private State bestForward;
+
+    public Bidirectional(char[][] mapData, Coordinate[] goalCoordinates, long timeBudgetMillis) {
+        this.mapData = mapData;
+        this.goalCoordinates = goalCoordinates;
+        this.deadlockDetector = new Deadlock(mapData, goalCoordinates);
+        this.timeBudgetNanos = Math.max(1L, timeBudgetMillis) * 1_000_000L;
+        this.expander = new PushExpander(mapData, goalCoordinates, deadlockDetector, stats);
+        this.grid = expander.grid;
+        this.forwardOpen = new PriorityQueue<>((a, b) -> {
+            int cmp = Integer.compare(a.getPushes() + FORWARD_WEIGHT * a.getHeuristic(),
+                    b.getPushes() + FORWARD_WEIGHT * b.getHeuristic());
+            return cmp != 0 ? cmp : Long.compare(a.getInsertionId(), b.getInsertionId());
+        });
+        this.backwardOpen = new PriorityQueue<>((a, b) -> {
+            int cmp = Integer.compare(a.pulls + BACKWARD_WEIGHT * a.heuristic, b.pulls + BACKWARD_WEIGHT * b.heuristic);
+            return cmp != 0 ? cmp : Long.compare(a.order, b.order);
+        });
+    }
+
+    private static final class PullNode {
+        final Coordinate[] boxes;
+        final PullNode parent;
+        final int playerCell;
+        final int dir;
+        final int pulls;
+        final int heuristic;
+        final long order;
+
+        PullNode(Coordinate[] boxes, PullNode parent, int playerCell, int dir, int pulls, int heuristic, long order) {
+            this.boxes = boxes;
+            this.parent = parent;
+            this.playerCell = playerCell;
+            this.dir = dir;
+            this.pulls = pulls;
+            this.heuristic = heuristic;
+            this.order = order;
+        }
+    }
+
+    private static final class Meeting {
+        State forward;
+        PullNode backward;
+    }
+
+    @Override
+    public SearchOutcome search(State initial) {
+        long start = System.nanoTime();
+        deadline = start + timeBudgetNanos;
+        expired = false;
+        bestForward = null;
+        stats.reset(timeBudgetNanos);
+        stats.markStart(start);
+        Diagnostics.markSearchStart();
+        table.clear();
+        forwardOpen.clear();
+        backwardOpen.clear();
+        initialItems = expander.itemsFor(initial);
+        prepareBackward(initial);
+
+        String plan = offerForward(initial.withHeuristic(Heuristic.pushLowerBound(initial)));
+        seedBackward(initial);
+        while (plan == null && (!forwardOpen.isEmpty() || !backwardOpen.isEmpty())) {
+            if (outOfTime()) {
+                break;
+            }
+            boolean forward = backwardOpen.isEmpty()
+                    || (!forwardOpen.isEmpty() && forwardOpen.size() <= backwardOpen.size());
+            plan = forward ? expandForward(forwardOpen.poll()) : expandBackward(backwardOpen.poll());
+            stats.recordOpenSize(forwardOpen.size() + backwardOpen.size());
+        }
+
+        long finish = System.nanoTime();
+        if (plan != null) {
+            stats.recordFirstIncumbent(finish);
+            stats.markFinish(finish, false, plan.length(), solutionPushes, 0L);
+            Diagnostics.setSummary(stats.toSummaryString());
+            Diagnostics.markSearchFinish(true, false);
+            return new SearchOutcome(plan, true, plan);
+        }
+        boolean aborted = expired && (!forwardOpen.isEmpty() || !backwardOpen.isEmpty());
+        State fallback = bestForward != null ? bestForward : initial;
+        stats.markFinish(finish, aborted, fallback.getDepth(), fallback.getPushes(), 0L);
+        Diagnostics.setSummary(stats.toSummaryString());
+        Diagnostics.markSearchFinish(false, aborted);
+        return new SearchOutcome(fallback.reconstructPlan(), false, null);
+    }
+
+    private boolean outOfTime() {
+        if (!expired && System.nanoTime() > deadline) {
+            expired = true;
+        }
+        return expired;
+    }
+
+    /** The forward state reported when the search stops unsolved: most boxes on goals, then lowest bound. */
+    private void updateBestForward(State state) {
+        if (bestForward == null || state.getBoxesOnGoals() > bestForward.getBoxesOnGoals()
+                || (state.getBoxesOnGoals() == bestForward.getBoxesOnGoals()
+                && state.getHeuristic() < bestForward.getHeuristic())) {
+            bestForward = state;
+        }
+    }
+
+    @Override
+    public SearchStats getStatistics() {
+        return stats.snapshot();
+    }
+
+    private String offerForward(State state) {
+        if (state.isGoal(goalCoordinates)) {
+            solutionPushes = state.getPushes();
+            return replays(state.reconstructPlan());
+        }
+        long key = PushExpander.key(state.getBoxes(), expander.flood(state));
+        Meeting meeting = table.computeIfAbsent(key, k -> new Meeting());
+        if (meeting.forward != null) {
+            return null;
+        }
+        meeting.forward = state;
+        if (meeting.backward != null) {
+            stats.recordFrontierMeeting();
+            String plan = replays(stitch(state, meeting.backward));
+            if (plan != null) {
+                return plan;
+            }
+        }
+        forwardOpen.add(state);
+        updateBestForward(state);
+        return null;
+    }
+
+    private String offerBackward(PullNode node, int regionCell) {
+        long key = PushExpander.key(node.boxes, regionCell);
+        Meeting meeting = table.computeIfAbsent(key, k -> new Meeting());
+        if (meeting.backward != null) {
+            return null;
+        }
+        meeting.backward = node;
+        if (meeting.forward != null) {
+            stats.recordFrontierMeeting();
+            String plan = replays(stitch(meeting.forward, node));
+            if (plan != null) {
+                return plan;
+            }
+        }
+        backwardOpen.add(node);
+        return null;
+    }
+
+    private String replays(String plan) {
+        if (plan == null) {
+            return null;
+        }
+        ReplayValidator.ValidationResult validation = ReplayValidator.validate(mapData, initialItems, plan);
+        return validation != null && validation.fullyValid && validation.solved ? plan : null;
+    }
+
+    private String expandForward(State state) {
+        stats.incrementExpanded();
+        expander.flood(state);
+        for (State child : expander.expand(state)) {
+            if (outOfTime()) {
+                return null;
+            }
+            String plan = offerForward(child);
+            if (plan != null) {
+                return plan;
+            }
+        }
+        return null;
+    }
+
+    private String expandBackward(PullNode node) {
+        stats.recordPullExpansion();
+        expander.flood(node.boxes, node.playerCell);
+        int count = expander.reachedCount();
+        int[] region = new int[count];
+        for (int i = 0; i < count; i++) {
+            region[i] = expander.reached(i);
+        }
+        List<PullNode> children = new ArrayList<>();
+        for (int p : region) {
+            if (outOfTime()) {
+                return null;
+            }
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int to = p + grid.step[dir];
+                int box = p - grid.step[dir];
+                if (grid.wall[to] || expander.hasBox(to) || !expander.hasBox(box)) {
+                    continue;
+                }
+                if (!startCell[p] && deadlockDetector.isCornerNoGoal(grid.x(p), grid.y(p))) {
+                    continue;
+                }
+                Coordinate[] updated = node.boxes.clone();
+                updated[expander.boxIndex(box)] = new Coordinate(grid.x(p), grid.y(p));
+                Arrays.sort(updated);
+                int h = backwardHeuristic(updated);
+                if (h == Integer.MAX_VALUE) {
+                    continue;
+                }
+                children.add(new PullNode(updated, node, to, dir, node.pulls + 1, h, sequence++));
+            }
+        }
+        for (PullNode child : children) {
+            if (outOfTime()) {
+                return null;
+            }
+            String plan = offerBackward(child, expander.flood(child.boxes, child.playerCell));
+            if (plan != null) {
+                return plan;
+            }
+        }
+        return null;
+    }
+
+    private void prepareBackward(State initial) {
+        startCell = new boolean[grid.size];
+        for (Coordinate box : initial.getBoxes()) {
+            startCell[grid.cell(box.x, box.y)] = true;
+        }
+        startDistance = new int[grid.size];
+        Arrays.fill(startDistance, Integer.MAX_VALUE);
+        GridKernel.IntQueue queue = grid.newQueue();
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (startCell[cell]) {
+                startDistance[cell] = 0;
+                queue.add(cell);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = cell + grid.step[dir];
+                if (grid.wall[n] || startDistance[n] != Integer.MAX_VALUE) {
+                    continue;
+                }
+                startDistance[n] = startDistance[cell] + 1;
+                queue.add(n);
+            }
+        }
+    }
+
+    private void seedBackward(State initial) {
+        Coordinate[] solved = new Coordinate[goalCoordinates.length];
+        for (int i = 0; i < solved.length; i++) {
+            solved[i] = new Coordinate(goalCoordinates[i].x, goalCoordinates[i].y);
+        }
+        Arrays.sort(solved);
+        int h = backwardHeuristic(solved);
+        if (h == Integer.MAX_VALUE || solved.length != initial.getBoxes().length) {
+            return;
+        }
+        Coordinate player = initial.getPlayer();
+        expander.flood(new Coordinate[0], grid.cell(player.x, player.y));
+        int[] floor = new int[expander.reachedCount()];
+        for (int i = 0; i < floor.length; i++) {
+            floor[i] = expander.reached(i);
+        }
+        boolean[] covered = new boolean[grid.size];
+        for (int cell : floor) {
+            if (grid.goal[cell] || covered[cell]) {
+                continue;
+            }
+            int regionCell = expander.flood(solved, cell);
+            for (int i = 0; i < expander.reachedCount(); i++) {
+                covered[expander.reached(i)] = true;
+            }
+            offerBackward(new PullNode(solved, null, cell, -1, 0, h, sequence++), regionCell);
+        }
+    }
+
+    private int backwardHeuristic(Coordinate[] boxes) {
+        int sum = 0;
+        for (Coordinate box : boxes) {
+            int d = startDistance[grid.cell(box.x, box.y)];
+            if (d == Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+            sum += d;
+        }
+        return sum;
+    }
+
+    private String stitch(State forward, PullNode backward) {
+        StringBuilder plan = new StringBuilder(forward.reconstructPlan());
+        Coordinate player = forward.getPlayer();
+        int playerCell = grid.cell(player.x, player.y);
+        for (PullNode node = backward; node.parent != null; node = node.parent) {
+            expander.flood(node.boxes, playerCell);
+            if (!expander.reaches(node.playerCell)) {
+                return null;
+            }
+            plan.append(expander.walkTo(node.playerCell));
+            plan.append(Constants.MOVES[node.dir ^ 1]);
+            playerCell = node.playerCell - grid.step[node.dir];
+        }
+        solutionPushes = forward.getPushes() + backward.pulls;
+        return plan.toString();
+    }
+}
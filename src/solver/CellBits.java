@@ -0,0 +1,68 @@
+package solver;
+
+final class CellBits {
+    private CellBits() {}
+
+    static long[] create(int cells) {
+        return new long[(cells + 63) >>> 6];
+    }
+
+    static boolean get(long[] bits, int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    static void set(long[] bits, int cell) {
+        bits[cell >>> 6] |= 1L << cell;
+    }
+
+    static void clear(long[] bits, int cell) {
+        bits[cell >>> 6] &= ~(1L << cell);
+    }
+
+    static int next(long[] bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long current = bits[word] & (-1L << from);
+        while (true) {
+            if (current != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(current);
+            }
+            if (++word == bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+    }
+
+    static void shifted(long[] src, int offset, long[] dst) {
+        int words = Math.floorDiv(offset, 64);
+        int shift = Math.floorMod(offset, 64);
+        for (int i = 0; i < dst.length; i++) {
+            long low = word(src, i + words);
+            dst[i] = shift == 0 ? low : (low >>> shift) | (word(src, i + words + 1) << (64 - shift));
+        }
+    }
+
+    static void flood(long[] region, long[] free, int[] steps, long[] scratch) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int offset : steps) {
+                shifted(region, offset, scratch);
+                for (int i = 0; i < region.length; i++) {
+                    long grown = region[i] | (scratch[i] & free[i]);
+                    if (grown != region[i]) {
+                        region[i] = grown;
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long word(long[] bits, int index) {
+        return index >= 0 && index < bits.length ? bits[index] : 0L;
+    }
+}
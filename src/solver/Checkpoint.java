@@ -0,0 +1,212 @@
+package solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class Checkpoint {
+    public static String DIR = null;
+    public static long INTERVAL_MS = 30_000L;
+    public static long RESERVE_MS = 500L;
+
+    private static final int MAGIC = 0x534b4350;
+    private static final int VERSION = 1;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private Checkpoint() {}
+
+    static boolean isEnabled() {
+        return DIR != null;
+    }
+
+    /**
+     * Writes the search frontier, giving up and keeping the previous checkpoint once {@code deadline}
+     * (a {@link System#nanoTime()} value) passes. Returns whether a new checkpoint was published.
+     */
+    static boolean save(char[][] mapData, Coordinate[] goals, State initial, Collection<State> open,
+                        Map<Long, Long> bestCosts, long deadline) {
+        File dir = new File(DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Checkpoint: cannot create " + dir.getPath());
+            return false;
+        }
+        File target = checkpointFile(mapData, goals, initial);
+        File partial = new File(dir, target.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            out.putInt(MAGIC).putInt(VERSION).putLong(initial.getHash());
+
+            IdentityHashMap<State, Integer> ids = new IdentityHashMap<>();
+            List<State> ordered = new ArrayList<>();
+            ArrayDeque<State> chain = new ArrayDeque<>();
+            for (State state : open) {
+                if ((ordered.size() & 4095) == 0) {
+                    checkDeadline(deadline);
+                }
+                for (State s = state; s != null && !ids.containsKey(s); s = s.getParent()) {
+                    chain.push(s);
+                }
+                while (!chain.isEmpty()) {
+                    State s = chain.pop();
+                    ids.put(s, ordered.size());
+                    ordered.add(s);
+                }
+            }
+            out.putInt(ordered.size()).putInt(initial.getBoxes().length);
+            for (State state : ordered) {
+                char[] walk = state.getPrePushWalk();
+                ensure(channel, out, deadline, 24 + walk.length + 4 * state.getBoxes().length);
+                State parent = state.getParent();
+                out.putInt(parent == null ? -1 : ids.get(parent));
+                out.putShort((short) state.getPlayer().x).putShort((short) state.getPlayer().y);
+                out.put((byte) state.getLastMove());
+                out.putShort((short) state.getLastMoveRun());
+                out.putShort((short) (parent == null ? 0 : state.getPushes() - parent.getPushes()));
+                out.putInt(state.getHeuristic());
+                out.putInt(walk.length);
+                for (char c : walk) {
+                    out.put((byte) c);
+                }
+                for (Coordinate box : state.getBoxes()) {
+                    out.putShort((short) box.x).putShort((short) box.y);
+                }
+            }
+
+            ensure(channel, out, deadline, 4);
+            out.putInt(open.size());
+            for (State state : open) {
+                ensure(channel, out, deadline, 4);
+                out.putInt(ids.get(state));
+            }
+
+            ensure(channel, out, deadline, 4);
+            out.putInt(bestCosts.size());
+            for (Map.Entry<Long, Long> entry : bestCosts.entrySet()) {
+                ensure(channel, out, deadline, 16);
+                out.putLong(entry.getKey()).putLong(entry.getValue());
+            }
+
+            int[][] patterns = DeadlockPatterns.snapshot();
+            ensure(channel, out, deadline, 4);
+            out.putInt(patterns.length);
+            for (int[] pattern : patterns) {
+                ensure(channel, out, deadline, 1 + 4 * pattern.length);
+                out.put((byte) pattern.length);
+                for (int cell : pattern) {
+                    out.putInt(cell);
+                }
+            }
+            drain(channel, out);
+        } catch (IOException e) {
+            System.err.println("Checkpoint: failed to write " + partial.getPath() + ": " + e.getMessage());
+            partial.delete();
+            return false;
+        }
+        try {
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Checkpoint: failed to publish " + target.getPath() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    static boolean restore(char[][] mapData, Coordinate[] goals, State initial, Collection<State> open, Map<Long, Long> bestCosts) {
+        File source = checkpointFile(mapData, goals, initial);
+        if (!source.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != initial.getHash()) {
+                return false;
+            }
+            int count = in.getInt();
+            int boxCount = in.getInt();
+            if (boxCount != initial.getBoxes().length) {
+                return false;
+            }
+            State[] states = new State[count];
+            for (int i = 0; i < count; i++) {
+                int parent = in.getInt();
+                Coordinate player = new Coordinate(in.getShort(), in.getShort());
+                char move = (char) in.get();
+                int run = in.getShort();
+                int pushes = in.getShort();
+                int heuristic = in.getInt();
+                char[] walk = new char[in.getInt()];
+                for (int j = 0; j < walk.length; j++) {
+                    walk[j] = (char) in.get();
+                }
+                Coordinate[] boxes = new Coordinate[boxCount];
+                for (int j = 0; j < boxCount; j++) {
+                    boxes[j] = new Coordinate(in.getShort(), in.getShort());
+                }
+                states[i] = parent < 0
+                        ? initial.withHeuristic(heuristic)
+                        : State.macro(states[parent], player, boxes, move, run, pushes, heuristic, walk);
+            }
+            int openCount = in.getInt();
+            for (int i = 0; i < openCount; i++) {
+                open.add(states[in.getInt()]);
+            }
+            int costCount = in.getInt();
+            for (int i = 0; i < costCount; i++) {
+                bestCosts.put(in.getLong(), in.getLong());
+            }
+            int patternCount = in.getInt();
+            int[][] patterns = new int[patternCount][];
+            for (int i = 0; i < patternCount; i++) {
+                patterns[i] = new int[in.get()];
+                for (int j = 0; j < patterns[i].length; j++) {
+                    patterns[i][j] = in.getInt();
+                }
+            }
+            DeadlockPatterns.restore(patterns);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Checkpoint: failed to read " + source.getPath() + ": " + e.getMessage());
+            open.clear();
+            bestCosts.clear();
+            return false;
+        }
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer out, long deadline, int bytes) throws IOException {
+        if (out.remaining() < bytes) {
+            checkDeadline(deadline);
+            drain(channel, out);
+        }
+    }
+
+    private static void checkDeadline(long deadline) throws IOException {
+        if (System.nanoTime() > deadline) {
+            throw new IOException("time limit reached before the checkpoint was complete");
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static File checkpointFile(char[][] mapData, Coordinate[] goals, State initial) {
+        long key = DeadlockPatterns.computeMapKey(mapData, goals) ^ initial.getHash();
+        return new File(DIR, Long.toHexString(key) + ".checkpoint");
+    }
+}
@@ -24,46 +24,36 @@ public final class Components {
         for (int y = 0; y < rows; y++) {
             Arrays.fill(compId[y], -2);
         }
+        GridKernel grid = GridKernel.of(map, goals);
+        GridKernel.IntQueue queue = grid.newQueue();
         int componentCount = 0;
-        int maxCells = rows * cols;
-        int[] queueX = new int[maxCells];
-        int[] queueY = new int[maxCells];
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                if (map[y][x] == Constants.WALL) {
+                int start = grid.cell(x, y);
+                if (grid.wall[start]) {
                     compId[y][x] = -1;
                     continue;
                 }
                 if (compId[y][x] != -2) {
                     continue;
                 }
-                int head = 0;
-                int tail = 0;
                 compId[y][x] = componentCount;
-                queueX[tail] = x;
-                queueY[tail] = y;
-                tail++;
-                while (head < tail) {
-                    int cx = queueX[head];
-                    int cy = queueY[head];
-                    head++;
-                    for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                        int nx = cx + Constants.DIRECTION_X[dir];
-                        int ny = cy + Constants.DIRECTION_Y[dir];
-                        if (nx < 0 || nx >= cols || ny < 0 || ny >= rows) {
-                            continue;
-                        }
-                        if (map[ny][nx] == Constants.WALL) {
-                            compId[ny][nx] = -1;
+                queue.clear();
+                queue.add(start);
+                while (!queue.isEmpty()) {
+                    int cell = queue.poll();
+                    for (int dir = 0; dir < grid.step.length; dir++) {
+                        int n = cell + grid.step[dir];
+                        if (grid.wall[n]) {
                             continue;
                         }
+                        int nx = grid.x(n);
+                        int ny = grid.y(n);
                         if (compId[ny][nx] != -2) {
                             continue;
                         }
                         compId[ny][nx] = componentCount;
-                        queueX[tail] = nx;
-                        queueY[tail] = ny;
-                        tail++;
+                        queue.add(n);
                     }
                 }
                 componentCount++;
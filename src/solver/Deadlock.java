@@ -1,10 +1,7 @@
 package solver;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
 
 public final class Deadlock {
     private static volatile boolean enabled = true;
@@ -13,15 +10,15 @@ public final class Deadlock {
     private final boolean[][] goal;
     private final int rows;
     private final int cols;
-    private final int[][] boxStamp;
-    private int boxStampToken = 1;
-    private final int[][] regionStamp;
-    private int regionToken = 1;
-    private final int[][] occupiedStamp;
-    private int occupiedToken = 1;
-    private final HashMap<Long, Boolean> strictRegionMemo = new HashMap<>();
+    private final GridKernel grid;
+    private final long[] boxBoard;
+    private Coordinate[] boardSource;
+    private final GridKernel.Stamp regionMarks;
+    private final GridKernel.Stamp occupiedMarks;
+    private final GridKernel.IntQueue queue;
     private final int[][] goalComponentId;
     private final int[][] goalDepth;
+    private final boolean[][] goalFreeWindow;
     private boolean[] goalComponentEnforce;
     private int goalComponentCount;
 
@@ -35,9 +32,11 @@ public final class Deadlock {
                 goal[g.y][g.x] = true;
             }
         }
-        this.boxStamp = new int[rows][cols];
-        this.regionStamp = new int[rows][cols];
-        this.occupiedStamp = new int[rows][cols];
+        this.grid = GridKernel.of(mapData, goalCoordinates);
+        this.boxBoard = CellBits.create(grid.size);
+        this.regionMarks = grid.newStamp();
+        this.occupiedMarks = grid.newStamp();
+        this.queue = grid.newQueue();
         this.goalComponentId = new int[rows][cols];
         this.goalDepth = new int[rows][cols];
         for (int y = 0; y < rows; y++) {
@@ -46,22 +45,150 @@ public final class Deadlock {
         }
         DeadlockCache.clear();
         RegionCache.clear();
+        DeadlockPatterns.bind(mapData, goalCoordinates);
+        LocalPatternTable.ensureLoaded();
+        this.goalFreeWindow = new boolean[rows][cols];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                goalFreeWindow[y][x] = !goalInWindow(x, y);
+            }
+        }
         buildGoalOrderingMetadata();
     }
 
+    private boolean goalInWindow(int x, int y) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (isGoal(x + dx, y + dy)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public boolean isDeadlock(State state) {
         if (!enabled) {
             return false;
         }
-        markBoxes(state);
-        return DeadlockCache.getOrCompute(state.getBoxes(), () -> evaluateDeadlock(state));
+        Coordinate[] boxes = state.getBoxes();
+        markBoxes(boxes);
+        int movedIdx = state.getMovedBoxIndex();
+        if (movedIdx >= 0 && isLocalWindowDeadlock(boxes[movedIdx].x, boxes[movedIdx].y)) {
+            return true;
+        }
+        return DeadlockCache.getOrCompute(boxes, () -> evaluateDeadlock(boxes));
     }
 
-    private boolean evaluateDeadlock(State state) {
+    public boolean isProvableDeadlock(State state) {
         if (!enabled) {
             return false;
         }
-        for (Coordinate box : state.getBoxes()) {
+        Coordinate[] boxes = state.getBoxes();
+        markBoxes(boxes);
+        int movedIdx = state.getMovedBoxIndex();
+        if (movedIdx >= 0 && isLocalWindowDeadlock(boxes[movedIdx].x, boxes[movedIdx].y)) {
+            return true;
+        }
+        return hasDeadBox(boxes);
+    }
+
+    boolean isLocalFreeze(int x, int y, Coordinate[] boxes) {
+        if (!enabled) {
+            return false;
+        }
+        if (!inBounds(x, y) || !goalFreeWindow[y][x]) {
+            return quickFrozenSquare(x, y, boxes);
+        }
+        markBoxes(boxes);
+        return isLocalWindowDeadlock(x, y);
+    }
+
+    private boolean isLocalWindowDeadlock(int x, int y) {
+        if (!inBounds(x, y) || !goalFreeWindow[y][x]) {
+            return false;
+        }
+        int index = 0;
+        int weight = 1;
+        for (int i = 0; i < LocalPatternTable.NEIGHBOURS; i++) {
+            int nx = x + LocalPatternTable.NEIGHBOUR_DX[i];
+            int ny = y + LocalPatternTable.NEIGHBOUR_DY[i];
+            if (isWallOrOutOfBounds(nx, ny)) {
+                index += LocalPatternTable.WALL * weight;
+            } else if (hasBox(nx, ny)) {
+                index += LocalPatternTable.BOX * weight;
+            }
+            weight *= 3;
+        }
+        return LocalPatternTable.isDeadlocked(index);
+    }
+
+    boolean matchesLearnedPattern(Coordinate[] boxes, int movedIdx) {
+        if (!enabled) {
+            return false;
+        }
+        return DeadlockPatterns.matches(boxes, movedIdx);
+    }
+
+    boolean learnPattern(Coordinate[] boxes, int movedIdx) {
+        if (!enabled || movedIdx < 0 || boxes.length < 2) {
+            return false;
+        }
+        if (!isFrozenSubset(boxes, movedIdx)) {
+            return false;
+        }
+        Coordinate moved = boxes[movedIdx];
+        List<Coordinate> kept = new ArrayList<>(boxes.length);
+        for (Coordinate box : boxes) {
+            kept.add(box);
+        }
+        for (int i = 0; i < boxes.length; i++) {
+            if (i == movedIdx) {
+                continue;
+            }
+            List<Coordinate> trial = new ArrayList<>(kept);
+            trial.remove(boxes[i]);
+            Coordinate[] trialBoxes = trial.toArray(new Coordinate[0]);
+            if (isFrozenSubset(trialBoxes, indexOf(trialBoxes, moved))) {
+                kept = trial;
+            }
+        }
+        if (kept.size() < 2) {
+            return false;
+        }
+        return DeadlockPatterns.add(kept.toArray(new Coordinate[0]));
+    }
+
+    private boolean isFrozenSubset(Coordinate[] boxes, int movedIdx) {
+        Coordinate moved = boxes[movedIdx];
+        if (isLocalFreeze(moved.x, moved.y, boxes)) {
+            return true;
+        }
+        markBoxes(boxes);
+        return hasDeadBox(boxes);
+    }
+
+    private static int indexOf(Coordinate[] boxes, Coordinate target) {
+        for (int i = 0; i < boxes.length; i++) {
+            if (boxes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean evaluateDeadlock(Coordinate[] boxes) {
+        if (!enabled) {
+            return false;
+        }
+        if (hasDeadBox(boxes)) {
+            return true;
+        }
+        return violatesGoalCorridorOrder(boxes);
+    }
+
+    private boolean hasDeadBox(Coordinate[] boxes) {
+        for (Coordinate box : boxes) {
             if (isGoal(box.x, box.y)) {
                 continue;
             }
@@ -77,13 +204,10 @@ public final class Deadlock {
             if (isCorridorTrap(box)) {
                 return true;
             }
-            if (isImmovable(box.x, box.y, state.getBoxes())) {
+            if (isImmovable(box.x, box.y, boxes)) {
                 return true;
             }
         }
-        if (violatesGoalCorridorOrder(state.getBoxes())) {
-            return true;
-        }
         return false;
     }
 
@@ -91,27 +215,18 @@ public final class Deadlock {
         enabled = value;
     }
 
-    private void markBoxes(State state) {
-        advanceBoxStamp();
-        for (Coordinate box : state.getBoxes()) {
-            if (inBounds(box.x, box.y)) {
-                boxStamp[box.y][box.x] = boxStampToken;
-            }
-        }
-    }
-
-    private void advanceBoxStamp() {
-        boxStampToken++;
-        if (boxStampToken == Integer.MAX_VALUE) {
-            for (int y = 0; y < rows; y++) {
-                java.util.Arrays.fill(boxStamp[y], 0);
+    private void markBoxes(Coordinate[] boxes) {
+        java.util.Arrays.fill(boxBoard, 0L);
+        for (Coordinate box : boxes) {
+            if (box != null && inBounds(box.x, box.y)) {
+                CellBits.set(boxBoard, grid.cell(box.x, box.y));
             }
-            boxStampToken = 1;
         }
+        boardSource = boxes;
     }
 
     private boolean hasBox(int x, int y) {
-        return inBounds(x, y) && boxStamp[y][x] == boxStampToken;
+        return inBounds(x, y) && CellBits.get(boxBoard, grid.cell(x, y));
     }
 
     private boolean isGoal(int x, int y) {
@@ -511,77 +626,52 @@ public final class Deadlock {
     }
 
     private boolean computeRegionHasGoalForMove(Coordinate[] boxes, int movedIdx, int destX, int destY) {
-        advanceRegionToken();
-        advanceOccupiedToken();
-        long key = (((long) movedIdx) << 48)
-                | (((long) destY & 0xffffL) << 32)
-                | (((long) destX & 0xffffL) << 16)
-                | ((long) occupiedToken & 0xffffL);
-        Boolean cached = strictRegionMemo.get(key);
-        if (cached != null) {
-            return cached.booleanValue();
-        }
-        int ignoringToken = regionToken;
-        Queue<int[]> queue = new ArrayDeque<>();
+        regionMarks.next();
+        occupiedMarks.next();
         for (int i = 0; i < boxes.length; i++) {
             if (i == movedIdx) {
                 continue;
             }
             Coordinate other = boxes[i];
             if (other != null && inBounds(other.x, other.y)) {
-                occupiedStamp[other.y][other.x] = occupiedToken;
+                occupiedMarks.mark(grid.cell(other.x, other.y));
             }
         }
-        regionStamp[destY][destX] = ignoringToken;
-        queue.add(new int[] {destX, destY});
+        int start = grid.cell(destX, destY);
+        regionMarks.mark(start);
+        queue.clear();
+        queue.add(start);
         int goalsInRegion = 0;
         while (!queue.isEmpty()) {
-            int[] cell = queue.remove();
-            int cx = cell[0];
-            int cy = cell[1];
-            if (goal[cy][cx]) {
+            int cell = queue.poll();
+            if (grid.goal[cell]) {
                 goalsInRegion++;
             }
-            for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                int nx = cx + Constants.DIRECTION_X[dir];
-                int ny = cy + Constants.DIRECTION_Y[dir];
-                if (!inBounds(nx, ny)) {
-                    continue;
-                }
-                if (regionStamp[ny][nx] == ignoringToken) {
-                    continue;
-                }
-                if (mapData[ny][nx] == Constants.WALL) {
-                    continue;
-                }
-                if (occupiedStamp[ny][nx] == occupiedToken) {
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = cell + grid.step[dir];
+                if (regionMarks.contains(n) || grid.wall[n] || occupiedMarks.contains(n)) {
                     continue;
                 }
-                regionStamp[ny][nx] = ignoringToken;
-                queue.add(new int[] {nx, ny});
+                regionMarks.mark(n);
+                queue.add(n);
             }
         }
         if (goalsInRegion == 0) {
             return false;
         }
 
-        int boxesInRegion = 0;
-        if (regionStamp[destY][destX] == ignoringToken) {
-            boxesInRegion++;
-        }
+        int boxesInRegion = 1;
         for (int i = 0; i < boxes.length; i++) {
             if (i == movedIdx) {
                 continue;
             }
             Coordinate box = boxes[i];
             if (box != null && inBounds(box.x, box.y)
-                    && regionStamp[box.y][box.x] == ignoringToken) {
+                    && regionMarks.contains(grid.cell(box.x, box.y))) {
                 boxesInRegion++;
             }
         }
-        boolean ok = boxesInRegion <= goalsInRegion;
-        strictRegionMemo.put(key, ok);
-        return ok;
+        return boxesInRegion <= goalsInRegion;
     }
 
     public boolean isWallLineFreeze(int x, int y, Coordinate[] boxes) {
@@ -710,16 +800,13 @@ public final class Deadlock {
     }
 
     private boolean hasBox(Coordinate[] boxes, int excludeIdx, int x, int y) {
-        for (int i = 0; i < boxes.length; i++) {
-            if (i == excludeIdx) {
-                continue;
-            }
-            Coordinate box = boxes[i];
-            if (box != null && box.x == x && box.y == y) {
-                return true;
-            }
+        if (boxes != boardSource) {
+            markBoxes(boxes);
         }
-        return false;
+        if (excludeIdx >= 0 && boxes[excludeIdx] != null && boxes[excludeIdx].x == x && boxes[excludeIdx].y == y) {
+            return false;
+        }
+        return hasBox(x, y);
     }
 
     private int findBoxIndex(Coordinate[] boxes, int x, int y) {
@@ -747,101 +834,65 @@ public final class Deadlock {
     }
 
     private boolean regionHasGoal(Coordinate startBox) {
-        advanceRegionToken();
-        Queue<int[]> queue = new ArrayDeque<>();
         if (!inBounds(startBox.x, startBox.y)) {
             return false;
         }
-        regionStamp[startBox.y][startBox.x] = regionToken;
-        queue.add(new int[] {startBox.x, startBox.y});
+        regionMarks.next();
+        int start = grid.cell(startBox.x, startBox.y);
+        regionMarks.mark(start);
+        queue.clear();
+        queue.add(start);
         while (!queue.isEmpty()) {
-            int[] cell = queue.remove();
-            int cx = cell[0];
-            int cy = cell[1];
-            if (goal[cy][cx]) {
+            int cell = queue.poll();
+            if (grid.goal[cell]) {
                 return true;
             }
-            for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                int nx = cx + Constants.DIRECTION_X[dir];
-                int ny = cy + Constants.DIRECTION_Y[dir];
-                if (!inBounds(nx, ny)) {
-                    continue;
-                }
-                if (regionStamp[ny][nx] == regionToken) {
-                    continue;
-                }
-                if (mapData[ny][nx] == Constants.WALL) {
-                    continue;
-                }
-                if (hasBox(nx, ny) && !(nx == startBox.x && ny == startBox.y)) {
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = cell + grid.step[dir];
+                if (regionMarks.contains(n) || grid.wall[n] || CellBits.get(boxBoard, n)) {
                     continue;
                 }
-                regionStamp[ny][nx] = regionToken;
-                queue.add(new int[] {nx, ny});
+                regionMarks.mark(n);
+                queue.add(n);
             }
         }
         return false;
     }
 
-    private void advanceRegionToken() {
-        regionToken++;
-        if (regionToken == Integer.MAX_VALUE) {
-            for (int y = 0; y < rows; y++) {
-                java.util.Arrays.fill(regionStamp[y], 0);
-            }
-            regionToken = 1;
-        }
-    }
-
-    private void advanceOccupiedToken() {
-        occupiedToken++;
-        if (occupiedToken == Integer.MAX_VALUE) {
-            for (int y = 0; y < rows; y++) {
-                java.util.Arrays.fill(occupiedStamp[y], 0);
-            }
-            occupiedToken = 1;
-            strictRegionMemo.clear();
-        }
-    }
-
     private void buildGoalOrderingMetadata() {
         List<Boolean> enforceList = new ArrayList<>();
+        int[] cells = new int[grid.size];
+        int[] boundary = new int[grid.size];
         int componentIndex = 0;
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                if (!goal[y][x]) {
+                if (!goal[y][x] || goalComponentId[y][x] >= 0) {
                     continue;
                 }
-                if (goalComponentId[y][x] >= 0) {
-                    continue;
-                }
-                ArrayDeque<int[]> queue = new ArrayDeque<>();
-                List<int[]> cells = new ArrayList<>();
-                List<int[]> boundary = new ArrayList<>();
-                queue.add(new int[] {x, y});
+                int cellCount = 0;
+                int boundaryCount = 0;
+                int start = grid.cell(x, y);
+                queue.clear();
+                queue.add(start);
                 goalComponentId[y][x] = componentIndex;
                 boolean enforce = true;
                 while (!queue.isEmpty()) {
-                    int[] cell = queue.remove();
-                    int cx = cell[0];
-                    int cy = cell[1];
-                    cells.add(cell);
+                    int cell = queue.poll();
+                    cells[cellCount++] = cell;
                     boolean boundaryCell = false;
                     int goalNeighbors = 0;
-                    for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                        int nx = cx + Constants.DIRECTION_X[dir];
-                        int ny = cy + Constants.DIRECTION_Y[dir];
-                        if (!inBounds(nx, ny)) {
-                            continue;
-                        }
-                        if (mapData[ny][nx] == Constants.WALL) {
+                    for (int dir = 0; dir < grid.step.length; dir++) {
+                        int n = cell + grid.step[dir];
+                        if (grid.wall[n]) {
                             continue;
                         }
-                        if (goal[ny][nx]) {
+                        if (grid.goal[n]) {
                             goalNeighbors++;
+                            int nx = grid.x(n);
+                            int ny = grid.y(n);
                             if (goalComponentId[ny][nx] < 0) {
                                 goalComponentId[ny][nx] = componentIndex;
-                                queue.add(new int[] {nx, ny});
+                                queue.add(n);
                             }
                         } else {
                             boundaryCell = true;
@@ -851,53 +902,39 @@ public final class Deadlock {
                         enforce = false;
                     }
                     if (boundaryCell) {
-                        boundary.add(cell);
+                        boundary[boundaryCount++] = cell;
                     }
                 }
-                if (boundary.isEmpty()) {
+                if (boundaryCount == 0) {
                     enforce = false;
                 }
                 enforceList.add(enforce);
+                for (int i = 0; i < cellCount; i++) {
+                    goalDepth[grid.y(cells[i])][grid.x(cells[i])] = -1;
+                }
                 if (enforce) {
-                    ArrayDeque<int[]> depthQueue = new ArrayDeque<>();
-                    for (int[] cell : cells) {
-                        int cx = cell[0];
-                        int cy = cell[1];
-                        goalDepth[cy][cx] = -1;
+                    queue.clear();
+                    for (int i = 0; i < boundaryCount; i++) {
+                        goalDepth[grid.y(boundary[i])][grid.x(boundary[i])] = 0;
+                        queue.add(boundary[i]);
                     }
-                    for (int[] cell : boundary) {
-                        int cx = cell[0];
-                        int cy = cell[1];
-                        goalDepth[cy][cx] = 0;
-                        depthQueue.add(cell);
-                    }
-                    while (!depthQueue.isEmpty()) {
-                        int[] cell = depthQueue.remove();
-                        int cx = cell[0];
-                        int cy = cell[1];
-                        int base = goalDepth[cy][cx];
-                        for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                            int nx = cx + Constants.DIRECTION_X[dir];
-                            int ny = cy + Constants.DIRECTION_Y[dir];
-                            if (!inBounds(nx, ny)) {
+                    while (!queue.isEmpty()) {
+                        int cell = queue.poll();
+                        int base = goalDepth[grid.y(cell)][grid.x(cell)];
+                        for (int dir = 0; dir < grid.step.length; dir++) {
+                            int n = cell + grid.step[dir];
+                            if (grid.wall[n]) {
                                 continue;
                             }
-                            if (goalComponentId[ny][nx] != componentIndex) {
-                                continue;
-                            }
-                            if (goalDepth[ny][nx] != -1) {
+                            int nx = grid.x(n);
+                            int ny = grid.y(n);
+                            if (goalComponentId[ny][nx] != componentIndex || goalDepth[ny][nx] != -1) {
                                 continue;
                             }
                             goalDepth[ny][nx] = base + 1;
-                            depthQueue.add(new int[] {nx, ny});
+                            queue.add(n);
                         }
                     }
-                } else {
-                    for (int[] cell : cells) {
-                        int cx = cell[0];
-                        int cy = cell[1];
-                        goalDepth[cy][cx] = -1;
-                    }
                 }
                 componentIndex++;
             }
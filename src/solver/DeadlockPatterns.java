@@ -0,0 +1,301 @@
+package solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+public final class DeadlockPatterns {
+    public static String STORE_DIR = null;
+
+    private static final int MAGIC = 0x534b4450;
+    private static final int VERSION = 1;
+    private static final int MAX_PATTERNS = 1 << 16;
+    private static final int MAX_PATTERN_SIZE = 8;
+    private static final long P = 1099511628211L;
+
+    private static long mapKey = 0L;
+    private static int cols;
+    private static int cellCount;
+    private static int[][] patterns = new int[0][];
+    private static int patternCount;
+    private static int[][] byCell = new int[0][];
+    private static int[] byCellSize = new int[0];
+    private static final HashSet<Long> known = new HashSet<>();
+    private static final ThreadLocal<BoxStamp> stamps = ThreadLocal.withInitial(BoxStamp::new);
+    private static volatile int published;
+    private static boolean dirty;
+
+    private DeadlockPatterns() {}
+
+    public static synchronized void bind(char[][] mapData, Coordinate[] goals) {
+        long key = computeMapKey(mapData, goals);
+        int r = mapData.length;
+        int c = r == 0 ? 0 : mapData[0].length;
+        if (key == mapKey && cellCount == r * c) {
+            return;
+        }
+        mapKey = key;
+        cols = c;
+        cellCount = r * c;
+        patterns = new int[64][];
+        patternCount = 0;
+        byCell = new int[cellCount][];
+        byCellSize = new int[cellCount];
+        known.clear();
+        dirty = false;
+        load();
+        published++;
+    }
+
+    public static synchronized void clear() {
+        mapKey = 0L;
+        cellCount = 0;
+        patterns = new int[0][];
+        patternCount = 0;
+        byCell = new int[0][];
+        byCellSize = new int[0];
+        known.clear();
+        dirty = false;
+        published++;
+    }
+
+    public static int size() {
+        return patternCount;
+    }
+
+    static boolean matches(Coordinate[] boxes, int movedIdx) {
+        if (published == 0 || patternCount == 0 || movedIdx < 0 || movedIdx >= boxes.length) {
+            return false;
+        }
+        int width = cols;
+        int cells = cellCount;
+        int[][] byCellNow = byCell;
+        int[] byCellSizeNow = byCellSize;
+        int[][] patternsNow = patterns;
+        Coordinate moved = boxes[movedIdx];
+        int movedCell = moved.y * width + moved.x;
+        if (movedCell < 0 || movedCell >= cells || movedCell >= byCellNow.length || byCellSizeNow[movedCell] == 0) {
+            return false;
+        }
+        BoxStamp stamp = stamps.get();
+        int token = stamp.next(cells);
+        for (Coordinate box : boxes) {
+            int cell = box.y * width + box.x;
+            if (cell >= 0 && cell < cells) {
+                stamp.marks[cell] = token;
+            }
+        }
+        int[] candidates = byCellNow[movedCell];
+        int candidateCount = Math.min(byCellSizeNow[movedCell], candidates == null ? 0 : candidates.length);
+        outer:
+        for (int i = 0; i < candidateCount; i++) {
+            int id = candidates[i];
+            int[] pattern = id < patternsNow.length ? patternsNow[id] : null;
+            if (pattern == null) {
+                continue;
+            }
+            for (int cell : pattern) {
+                if (stamp.marks[cell] != token) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static final class BoxStamp {
+        int[] marks = new int[0];
+        int token;
+
+        int next(int size) {
+            if (marks.length < size) {
+                marks = new int[size];
+                token = 0;
+            }
+            token++;
+            if (token == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                token = 1;
+            }
+            return token;
+        }
+    }
+
+    static synchronized boolean add(Coordinate[] subset) {
+        if (subset.length < 2 || subset.length > MAX_PATTERN_SIZE || patternCount >= MAX_PATTERNS) {
+            return false;
+        }
+        int[] cells = new int[subset.length];
+        for (int i = 0; i < subset.length; i++) {
+            int cell = subset[i].y * cols + subset[i].x;
+            if (cell < 0 || cell >= cellCount) {
+                return false;
+            }
+            cells[i] = cell;
+        }
+        Arrays.sort(cells);
+        if (!insert(cells)) {
+            return false;
+        }
+        dirty = true;
+        return true;
+    }
+
+    static synchronized int[][] snapshot() {
+        return Arrays.copyOf(patterns, patternCount);
+    }
+
+    static synchronized void restore(int[][] stored) {
+        for (int[] cells : stored) {
+            if (patternCount >= MAX_PATTERNS) {
+                return;
+            }
+            boolean valid = cells.length >= 2 && cells.length <= MAX_PATTERN_SIZE;
+            for (int cell : cells) {
+                valid &= cell >= 0 && cell < cellCount;
+            }
+            if (valid) {
+                Arrays.sort(cells);
+                dirty |= insert(cells);
+            }
+        }
+    }
+
+    public static synchronized void save() {
+        if (STORE_DIR == null || !dirty || cellCount == 0) {
+            return;
+        }
+        File dir = new File(STORE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Pattern store: cannot create " + dir.getPath());
+            return;
+        }
+        File target = storeFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mapKey);
+            out.writeInt(cellCount);
+            out.writeInt(patternCount);
+            for (int i = 0; i < patternCount; i++) {
+                int[] pattern = patterns[i];
+                out.writeByte(pattern.length);
+                for (int cell : pattern) {
+                    out.writeInt(cell);
+                }
+            }
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("Pattern store: failed to write " + target.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    private static void load() {
+        if (STORE_DIR == null) {
+            return;
+        }
+        File source = storeFile();
+        if (!source.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            if (in.readLong() != mapKey || in.readInt() != cellCount) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count && patternCount < MAX_PATTERNS; i++) {
+                int length = in.readUnsignedByte();
+                int[] cells = new int[length];
+                boolean valid = length >= 2 && length <= MAX_PATTERN_SIZE;
+                for (int j = 0; j < length; j++) {
+                    cells[j] = in.readInt();
+                    if (cells[j] < 0 || cells[j] >= cellCount) {
+                        valid = false;
+                    }
+                }
+                if (valid) {
+                    Arrays.sort(cells);
+                    insert(cells);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Pattern store: failed to read " + source.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean insert(int[] cells) {
+        long key = 1469598103934665603L;
+        for (int cell : cells) {
+            key = (key ^ cell) * P;
+        }
+        if (!known.add(key) && isKnown(cells)) {
+            return false;
+        }
+        if (patternCount == patterns.length) {
+            patterns = Arrays.copyOf(patterns, patterns.length * 2);
+        }
+        int id = patternCount++;
+        patterns[id] = cells;
+        for (int cell : cells) {
+            int[] list = byCell[cell];
+            if (list == null) {
+                list = new int[4];
+                byCell[cell] = list;
+            } else if (byCellSize[cell] == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+                byCell[cell] = list;
+            }
+            list[byCellSize[cell]++] = id;
+        }
+        published++;
+        return true;
+    }
+
+    private static boolean isKnown(int[] cells) {
+        if (cells.length == 0) {
+            return true;
+        }
+        int[] ids = byCell[cells[0]];
+        for (int i = 0; i < byCellSize[cells[0]]; i++) {
+            if (Arrays.equals(patterns[ids[i]], cells)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static File storeFile() {
+        return new File(STORE_DIR, Long.toHexString(mapKey) + ".patterns");
+    }
+
+    static long computeMapKey(char[][] mapData, Coordinate[] goals) {
+        long key = 1469598103934665603L;
+        key = (key ^ mapData.length) * P;
+        for (char[] row : mapData) {
+            key = (key ^ row.length) * P;
+            for (char cell : row) {
+                boolean wall = cell == Constants.WALL;
+                boolean goal = cell == Constants.GOAL;
+                key = (key ^ (wall ? 1 : goal ? 2 : 0)) * P;
+            }
+        }
+        if (goals != null) {
+            for (Coordinate g : goals) {
+                key = (key ^ g.x) * P;
+                key = (key ^ g.y) * P;
+            }
+        }
+        return key;
+    }
+}
@@ -0,0 +1,141 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class Decomposition {
+    static boolean ENABLED = true;
+
+    private static final char FLOOR = ' ';
+
+    private Decomposition() {}
+
+    static final class Group {
+        final List<Coordinate> boxes = new ArrayList<>();
+        final List<Coordinate> goals = new ArrayList<>();
+
+        boolean isSolved() {
+            for (Coordinate box : boxes) {
+                if (!contains(goals, box)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static List<Group> plan(char[][] mapData, Coordinate[] boxes, Coordinate[] goals) {
+        if (!ENABLED || boxes.length < 2) {
+            return null;
+        }
+        Rooms.build(mapData, goals);
+        GridKernel grid = GridKernel.of(mapData, goals);
+        int[] parent = new int[Rooms.goalsInRoom.length];
+        for (int r = 0; r < parent.length; r++) {
+            parent[r] = r;
+        }
+        GridKernel.Stamp zone = grid.newStamp();
+        GridKernel.IntQueue queue = grid.newQueue();
+        for (Coordinate box : boxes) {
+            int start = grid.cell(box.x, box.y);
+            int root = Rooms.roomId[box.y][box.x];
+            zone.next();
+            zone.mark(start);
+            queue.clear();
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int cell = queue.poll();
+                union(parent, root, Rooms.roomId[grid.y(cell)][grid.x(cell)]);
+                for (int step : grid.step) {
+                    int next = cell + step;
+                    if (grid.wall[next] || grid.wall[cell - step] || zone.contains(next)) {
+                        continue;
+                    }
+                    zone.mark(next);
+                    queue.add(next);
+                }
+            }
+        }
+
+        Map<Integer, Group> groups = new LinkedHashMap<>();
+        for (Coordinate box : boxes) {
+            groups.computeIfAbsent(find(parent, Rooms.roomId[box.y][box.x]), k -> new Group()).boxes.add(box);
+        }
+        for (Coordinate goal : goals) {
+            groups.computeIfAbsent(find(parent, Rooms.roomId[goal.y][goal.x]), k -> new Group()).goals.add(goal);
+        }
+        List<Group> open = new ArrayList<>();
+        for (Group group : groups.values()) {
+            if (group.boxes.size() != group.goals.size()) {
+                return null;
+            }
+            if (!group.isSolved()) {
+                open.add(group);
+            }
+        }
+        return open.size() < 2 ? null : open;
+    }
+
+    static char[][] subMap(char[][] mapData, char[][] items, Group group) {
+        char[][] map = new char[mapData.length][];
+        for (int y = 0; y < mapData.length; y++) {
+            map[y] = mapData[y].clone();
+            for (int x = 0; x < map[y].length; x++) {
+                char item = items[y][x];
+                boolean box = item == Constants.BOX || item == Constants.BOX_ON_GOAL;
+                Coordinate cell = new Coordinate(x, y);
+                if (box && !contains(group.boxes, cell)) {
+                    map[y][x] = Constants.WALL;
+                } else if (map[y][x] == Constants.GOAL && !contains(group.goals, cell)) {
+                    map[y][x] = FLOOR;
+                }
+            }
+        }
+        for (Coordinate goal : group.goals) {
+            map[goal.y][goal.x] = Constants.GOAL;
+        }
+        return map;
+    }
+
+    static char[][] subItems(char[][] items, Group group) {
+        char[][] sub = new char[items.length][];
+        for (int y = 0; y < items.length; y++) {
+            sub[y] = new char[items[y].length];
+            for (int x = 0; x < items[y].length; x++) {
+                char item = items[y][x];
+                if (item == Constants.PLAYER || item == Constants.PLAYER_ON_GOAL) {
+                    sub[y][x] = Constants.PLAYER;
+                } else if ((item == Constants.BOX || item == Constants.BOX_ON_GOAL)
+                        && contains(group.boxes, new Coordinate(x, y))) {
+                    sub[y][x] = Constants.BOX;
+                } else {
+                    sub[y][x] = FLOOR;
+                }
+            }
+        }
+        return sub;
+    }
+
+    private static boolean contains(List<Coordinate> cells, Coordinate cell) {
+        for (Coordinate c : cells) {
+            if (c.x == cell.x && c.y == cell.y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int find(int[] parent, int r) {
+        while (parent[r] != r) {
+            parent[r] = parent[parent[r]];
+            r = parent[r];
+        }
+        return r;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+}
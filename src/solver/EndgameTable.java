@@ -0,0 +1,270 @@
+package solver;
+
+import java.util.Arrays;
+
+final class EndgameTable {
+    static boolean ENABLED = true;
+
+    private static final int MAX_FLOOR = 1024;
+    private static final int MAX_DISTANCE = 254;
+
+    private final GridKernel grid;
+    private final Coordinate[] goals;
+    private final int[] goalCells;
+    private final boolean[][] blocked;
+    private final int[] floorIndex;
+    private final int floorCount;
+    private final byte[][] tables;
+    private volatile boolean ready;
+    private volatile boolean cancelled;
+
+    private EndgameTable(GridKernel grid, Coordinate[] goals, int floorCount) {
+        this.grid = grid;
+        this.goals = goals;
+        this.goalCells = new int[goals.length];
+        for (int g = 0; g < goals.length; g++) {
+            goalCells[g] = grid.cell(goals[g].x, goals[g].y);
+        }
+        this.blocked = new boolean[goals.length][];
+        for (int g = 0; g < goals.length; g++) {
+            blocked[g] = grid.wall.clone();
+            for (int other = 0; other < goals.length; other++) {
+                if (other != g) {
+                    blocked[g][goalCells[other]] = true;
+                }
+            }
+        }
+        this.floorIndex = new int[grid.size];
+        Arrays.fill(floorIndex, -1);
+        int n = 0;
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (!grid.wall[cell]) {
+                floorIndex[cell] = n++;
+            }
+        }
+        this.floorCount = floorCount;
+        this.tables = new byte[goals.length][];
+    }
+
+    static EndgameTable start(char[][] mapData, Coordinate[] goals) {
+        if (!ENABLED || goals.length == 0) {
+            return null;
+        }
+        GridKernel grid = GridKernel.of(mapData, goals);
+        int floor = 0;
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (!grid.wall[cell]) {
+                floor++;
+            }
+        }
+        for (Coordinate g : goals) {
+            if (g.x < 0 || g.y < 0 || g.x >= grid.cols || g.y >= grid.rows) {
+                return null;
+            }
+        }
+        if (floor > MAX_FLOOR) {
+            return null;
+        }
+        EndgameTable table = new EndgameTable(grid, goals.clone(), floor);
+        Thread builder = new Thread(table::build, "endgame-table");
+        builder.setDaemon(true);
+        builder.setPriority(Thread.MIN_PRIORITY);
+        builder.start();
+        return table;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    private void build() {
+        GridKernel.Stamp region = grid.newStamp();
+        GridKernel.Stamp marked = grid.newStamp();
+        GridKernel.IntQueue flood = grid.newQueue();
+        for (int g = 0; g < goalCells.length && !cancelled; g++) {
+            tables[g] = retrograde(g, region, marked, flood);
+        }
+        ready = !cancelled;
+    }
+
+    private byte[] retrograde(int g, GridKernel.Stamp region, GridKernel.Stamp marked, GridKernel.IntQueue flood) {
+        boolean[] blocked = this.blocked[g];
+        byte[] table = new byte[floorCount * floorCount];
+        int[] states = new int[floorCount * 4 + 4];
+        int head = 0;
+        int tail = 0;
+        int goal = goalCells[g];
+        for (int step : grid.step) {
+            int player = goal + step;
+            if (!blocked[player] && table[rank(goal, player)] == 0) {
+                markRegion(table, blocked, goal, player, 1, marked, flood);
+                states = push(states, tail++, goal, player);
+            }
+        }
+        while (head < tail && !cancelled) {
+            int box = states[2 * head];
+            int player = states[2 * head + 1];
+            head++;
+            int value = table[rank(box, player)] & 0xff;
+            if (value > MAX_DISTANCE) {
+                continue;
+            }
+            markRegion(null, blocked, box, player, 0, region, flood);
+            for (int step : grid.step) {
+                int to = box + step;
+                int behind = to + step;
+                if (!region.contains(to) || blocked[behind] || table[rank(to, behind)] != 0) {
+                    continue;
+                }
+                markRegion(table, blocked, to, behind, value + 1, marked, flood);
+                states = push(states, tail++, to, behind);
+            }
+        }
+        return table;
+    }
+
+    private int[] push(int[] states, int index, int box, int player) {
+        if (2 * index + 1 >= states.length) {
+            states = Arrays.copyOf(states, states.length * 2);
+        }
+        states[2 * index] = box;
+        states[2 * index + 1] = player;
+        return states;
+    }
+
+    private void markRegion(byte[] table, boolean[] blocked, int box, int player, int value,
+                            GridKernel.Stamp region, GridKernel.IntQueue flood) {
+        region.next();
+        region.mark(player);
+        flood.clear();
+        flood.add(player);
+        while (!flood.isEmpty()) {
+            int cell = flood.poll();
+            if (table != null) {
+                table[rank(box, cell)] = (byte) value;
+            }
+            for (int step : grid.step) {
+                int next = cell + step;
+                if (next == box || blocked[next] || region.contains(next)) {
+                    continue;
+                }
+                region.mark(next);
+                flood.add(next);
+            }
+        }
+    }
+
+    private int rank(int box, int player) {
+        return floorIndex[box] * floorCount + floorIndex[player];
+    }
+
+    State finish(State state) {
+        if (!ready) {
+            return null;
+        }
+        Coordinate[] boxes = state.getBoxes();
+        if (boxes.length != goals.length || state.getBoxesOnGoals() != boxes.length - 1) {
+            return null;
+        }
+        int g = emptyGoal(state);
+        int loose = -1;
+        for (int i = 0; i < boxes.length && loose < 0; i++) {
+            if (!grid.goal[grid.cell(boxes[i].x, boxes[i].y)]) {
+                loose = i;
+            }
+        }
+        if (g < 0 || loose < 0) {
+            return null;
+        }
+        byte[] table = tables[g];
+        int box = grid.cell(boxes[loose].x, boxes[loose].y);
+        int player = grid.cell(state.getPlayer().x, state.getPlayer().y);
+        int value = table[rank(box, player)] & 0xff;
+        if (value == 0) {
+            return null;
+        }
+        boolean[] blocked = this.blocked[g];
+        GridKernel.Stamp seen = grid.newStamp();
+        GridKernel.IntQueue queue = grid.newQueue();
+        int[] parent = new int[grid.size];
+        State current = state;
+        while (value > 1) {
+            int chosen = -1;
+            char[] path = null;
+            for (int dir = 0; dir < grid.step.length && chosen < 0; dir++) {
+                int to = box + grid.step[dir];
+                if (blocked[to] || (table[rank(to, box)] & 0xff) != value - 1) {
+                    continue;
+                }
+                path = walk(blocked, box, player, box - grid.step[dir], seen, queue, parent);
+                if (path != null) {
+                    chosen = dir;
+                }
+            }
+            if (chosen < 0) {
+                return null;
+            }
+            int step = grid.step[chosen];
+            Coordinate[] next = boxes.clone();
+            next[loose] = new Coordinate(grid.x(box + step), grid.y(box + step));
+            current = State.macro(current, new Coordinate(grid.x(box), grid.y(box)), next,
+                    Constants.MOVES[chosen], 1, 1, 0, path);
+            boxes = current.getBoxes();
+            loose = current.getMovedBoxIndex();
+            player = box;
+            box += step;
+            value--;
+        }
+        return current;
+    }
+
+    private int emptyGoal(State state) {
+        for (int g = 0; g < goals.length; g++) {
+            if (!state.hasBoxAt(goals[g].x, goals[g].y)) {
+                return g;
+            }
+        }
+        return -1;
+    }
+
+    private char[] walk(boolean[] blocked, int box, int from, int to, GridKernel.Stamp seen,
+                        GridKernel.IntQueue queue, int[] parent) {
+        if (blocked[to] || to == box) {
+            return null;
+        }
+        seen.next();
+        seen.mark(from);
+        parent[from] = from;
+        queue.clear();
+        queue.add(from);
+        while (!queue.isEmpty() && !seen.contains(to)) {
+            int cell = queue.poll();
+            for (int step : grid.step) {
+                int next = cell + step;
+                if (next == box || blocked[next] || seen.contains(next)) {
+                    continue;
+                }
+                seen.mark(next);
+                parent[next] = cell;
+                queue.add(next);
+            }
+        }
+        if (!seen.contains(to)) {
+            return null;
+        }
+        int length = 0;
+        for (int cell = to; cell != from; cell = parent[cell]) {
+            length++;
+        }
+        char[] path = new char[length];
+        for (int cell = to; cell != from; cell = parent[cell]) {
+            int delta = cell - parent[cell];
+            int dir = 0;
+            while (grid.step[dir] != delta) {
+                dir++;
+            }
+            path[--length] = Constants.MOVES[dir];
+        }
+        return path;
+    }
+}
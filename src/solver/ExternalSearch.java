@@ -0,0 +1,394 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+public final class ExternalSearch implements SearchEngine {
+    public static int HOT_RECORDS = 1 << 15;
+
+    private static final int KEY = 0;
+    private static final int META = 1;
+    private static final int PARENT = 2;
+    private static final int BOXES = 3;
+    private static final int CHUNK = 4096;
+
+    private final Coordinate[] goalCoordinates;
+    private final char[][] mapData;
+    private final SearchStats stats = new SearchStats();
+    private final long timeBudgetNanos;
+    private final PushExpander expander;
+    private final GridKernel grid;
+
+    private int boxCount;
+    private int recordWords;
+    private SpillFile frontier;
+    private SpillFile store;
+    private final List<ClosedRun> closedRuns = new ArrayList<>();
+    private final TreeMap<Integer, Bucket> buckets = new TreeMap<>();
+
+    public ExternalSearch(char[][] mapData, Coordinate[] goalCoordinates, long timeBudgetMillis) {
+        this.mapData = mapData;
+        this.goalCoordinates = goalCoordinates;
+        this.timeBudgetNanos = Math.max(1L, timeBudgetMillis) * 1_000_000L;
+        this.expander = new PushExpander(mapData, goalCoordinates, new Deadlock(mapData, goalCoordinates), stats);
+        this.grid = expander.grid;
+    }
+
+    private final class Bucket {
+        long[] hot = new long[recordWords * 64];
+        int hotCount;
+        final List<long[]> segments = new ArrayList<>();
+        long spilledCount;
+
+        void add(long[] record) {
+            if (hotCount * recordWords == hot.length) {
+                if (hotCount >= HOT_RECORDS) {
+                    segments.add(new long[] {frontier.append(hot, 0, hotCount * recordWords), hotCount});
+                    spilledCount += hotCount;
+                    stats.recordSpilledRecords(hotCount);
+                    hotCount = 0;
+                } else {
+                    hot = Arrays.copyOf(hot, hot.length * 2);
+                }
+            }
+            System.arraycopy(record, 0, hot, hotCount * recordWords, recordWords);
+            hotCount++;
+        }
+
+        boolean isEmpty() {
+            return hotCount == 0 && segments.isEmpty();
+        }
+
+        long[] takeSegment() {
+            if (!segments.isEmpty()) {
+                long[] segment = segments.remove(0);
+                long[] records = new long[(int) segment[1] * recordWords];
+                frontier.read(segment[0], records, 0, records.length);
+                spilledCount -= segment[1];
+                return records;
+            }
+            long[] records = Arrays.copyOf(hot, hotCount * recordWords);
+            hotCount = 0;
+            return records;
+        }
+    }
+
+    private static final class ClosedRun {
+        private final SpillFile file = new SpillFile("soko-closed");
+        private final long[] buffer = new long[CHUNK];
+        private long[] fences = new long[16];
+        private int chunks;
+        private int pending;
+        private long count;
+        private long last;
+
+        void add(long key) {
+            buffer[pending++] = key;
+            last = key;
+            if (pending == CHUNK) {
+                flushChunk();
+            }
+        }
+
+        ClosedRun finish() {
+            if (pending > 0) {
+                flushChunk();
+            }
+            return this;
+        }
+
+        int chunkFor(long key) {
+            int idx = Arrays.binarySearch(fences, 0, chunks, key);
+            return idx >= 0 ? idx : -idx - 2;
+        }
+
+        int read(int chunk, long[] dst) {
+            long offset = (long) chunk * CHUNK;
+            int size = (int) Math.min(CHUNK, count - offset);
+            file.read(offset, dst, 0, size);
+            return size;
+        }
+
+        private void flushChunk() {
+            if (chunks == fences.length) {
+                fences = Arrays.copyOf(fences, chunks * 2);
+            }
+            fences[chunks++] = buffer[0];
+            file.append(buffer, 0, pending);
+            count += pending;
+            pending = 0;
+        }
+    }
+
+    @Override
+    public SearchOutcome search(State initial) {
+        long start = System.nanoTime();
+        long deadline = start + timeBudgetNanos;
+        stats.reset(timeBudgetNanos);
+        stats.markStart(start);
+        Diagnostics.markSearchStart();
+        boxCount = initial.getBoxes().length;
+        recordWords = BOXES + (boxCount + 3) / 4;
+        buckets.clear();
+        closedRuns.clear();
+        frontier = new SpillFile("soko-frontier");
+        store = new SpillFile("soko-store");
+        try {
+            return run(initial, deadline);
+        } finally {
+            frontier.close();
+            store.close();
+            for (ClosedRun run : closedRuns) {
+                run.file.close();
+            }
+            closedRuns.clear();
+        }
+    }
+
+    @Override
+    public SearchStats getStatistics() {
+        return stats.snapshot();
+    }
+
+    private SearchOutcome run(State initial, long deadline) {
+        int h = Heuristic.pushLowerBound(initial);
+        if (h != Integer.MAX_VALUE) {
+            bucket(h).add(encode(initial.getBoxes(), expander.flood(initial), 0, -1L));
+        }
+        boolean aborted = false;
+        while (!buckets.isEmpty()) {
+            int f = buckets.firstKey();
+            Bucket bucket = buckets.get(f);
+            while (!bucket.isEmpty()) {
+                if (System.nanoTime() > deadline) {
+                    aborted = true;
+                    break;
+                }
+                long goal = expandBatch(bucket.takeSegment(), f, deadline);
+                if (goal >= 0) {
+                    return finish(initial, goal);
+                }
+            }
+            if (aborted) {
+                break;
+            }
+            buckets.remove(f);
+        }
+        long now = System.nanoTime();
+        stats.markFinish(now, aborted, 0, 0, 0L);
+        Diagnostics.setSummary(stats.toSummaryString());
+        Diagnostics.markSearchFinish(false, aborted);
+        return new SearchOutcome("", false, null);
+    }
+
+    private long expandBatch(long[] records, int f, long deadline) {
+        int count = records.length / recordWords;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = records[i * recordWords + KEY];
+        }
+        Arrays.sort(keys);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || keys[unique - 1] != keys[i]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        keys = Arrays.copyOf(keys, unique);
+        boolean[] dropped = new boolean[unique];
+        long[] chunk = new long[CHUNK];
+        for (ClosedRun run : closedRuns) {
+            mergeAgainst(run, keys, dropped, chunk);
+        }
+
+        ClosedRun fresh = new ClosedRun();
+        for (int i = 0; i < unique; i++) {
+            if (!dropped[i]) {
+                fresh.add(keys[i]);
+            }
+        }
+        if (fresh.finish().count > 0) {
+            closedRuns.add(fresh);
+            compactClosedRuns();
+        } else {
+            fresh.file.close();
+        }
+
+        long[] record = new long[recordWords];
+        Coordinate[] boxes = new Coordinate[boxCount];
+        for (int i = 0; i < count; i++) {
+            if (System.nanoTime() > deadline) {
+                return -1L;
+            }
+            int idx = Arrays.binarySearch(keys, records[i * recordWords + KEY]);
+            if (dropped[idx]) {
+                stats.recordDuplicatePruned();
+                continue;
+            }
+            dropped[idx] = true;
+            System.arraycopy(records, i * recordWords, record, 0, recordWords);
+            long offset = store.append(record, 0, recordWords);
+            decodeBoxes(record, boxes);
+            int region = (int) (record[META] >>> 32);
+            int g = (int) record[META];
+            State state = State.initial(grid, new Coordinate(grid.x(region), grid.y(region)), boxes, 0);
+            if (state.isGoal(goalCoordinates)) {
+                return offset;
+            }
+            stats.incrementExpanded();
+            expander.flood(state);
+            for (State child : expander.expand(state)) {
+                int childF = g + 1 + child.getHeuristic();
+                bucket(Math.max(f, childF)).add(encode(child.getBoxes(), expander.flood(child), g + 1, offset));
+            }
+        }
+        return -1L;
+    }
+
+    private void mergeAgainst(ClosedRun run, long[] keys, boolean[] dropped, long[] chunk) {
+        int k = 0;
+        while (k < keys.length && keys[k] <= run.last) {
+            int c = run.chunkFor(keys[k]);
+            if (c < 0) {
+                k++;
+                continue;
+            }
+            int size = run.read(c, chunk);
+            while (k < keys.length && (c + 1 == run.chunks || keys[k] < run.fences[c + 1])) {
+                if (Arrays.binarySearch(chunk, 0, size, keys[k]) >= 0) {
+                    dropped[k] = true;
+                }
+                k++;
+            }
+        }
+    }
+
+    private void compactClosedRuns() {
+        while (closedRuns.size() >= 2) {
+            ClosedRun newer = closedRuns.get(closedRuns.size() - 1);
+            ClosedRun older = closedRuns.get(closedRuns.size() - 2);
+            if (older.count > 2 * newer.count) {
+                return;
+            }
+            RunReader a = new RunReader(older);
+            RunReader b = new RunReader(newer);
+            ClosedRun merged = new ClosedRun();
+            while (a.hasNext() || b.hasNext()) {
+                boolean takeA = !b.hasNext() || (a.hasNext() && a.peek() <= b.peek());
+                merged.add(takeA ? a.next() : b.next());
+            }
+            older.file.close();
+            newer.file.close();
+            closedRuns.remove(closedRuns.size() - 1);
+            closedRuns.set(closedRuns.size() - 1, merged.finish());
+        }
+    }
+
+    private static final class RunReader {
+        private final ClosedRun run;
+        private final long[] chunk = new long[CHUNK];
+        private int next;
+        private int index;
+        private int size;
+
+        RunReader(ClosedRun run) {
+            this.run = run;
+        }
+
+        boolean hasNext() {
+            if (index < size) {
+                return true;
+            }
+            if (next >= run.chunks) {
+                return false;
+            }
+            size = run.read(next++, chunk);
+            index = 0;
+            return true;
+        }
+
+        long peek() {
+            return chunk[index];
+        }
+
+        long next() {
+            return chunk[index++];
+        }
+    }
+
+    private Bucket bucket(int f) {
+        return buckets.computeIfAbsent(f, k -> new Bucket());
+    }
+
+    private long[] encode(Coordinate[] sortedBoxes, int region, int g, long parent) {
+        long[] record = new long[recordWords];
+        record[KEY] = PushExpander.key(sortedBoxes, region);
+        record[META] = ((long) region << 32) | (g & 0xffffffffL);
+        record[PARENT] = parent;
+        for (int i = 0; i < sortedBoxes.length; i++) {
+            long cell = grid.cell(sortedBoxes[i].x, sortedBoxes[i].y);
+            record[BOXES + i / 4] |= cell << (16 * (i % 4));
+        }
+        return record;
+    }
+
+    private void decodeBoxes(long[] record, Coordinate[] boxes) {
+        for (int i = 0; i < boxes.length; i++) {
+            int cell = (int) (record[BOXES + i / 4] >>> (16 * (i % 4))) & 0xffff;
+            boxes[i] = new Coordinate(grid.x(cell), grid.y(cell));
+        }
+    }
+
+    private SearchOutcome finish(State initial, long goalOffset) {
+        List<long[]> chain = new ArrayList<>();
+        for (long offset = goalOffset; offset >= 0; ) {
+            long[] record = new long[recordWords];
+            store.read(offset, record, 0, recordWords);
+            chain.add(record);
+            offset = record[PARENT];
+        }
+        StringBuilder plan = new StringBuilder();
+        int player = grid.cell(initial.getPlayer().x, initial.getPlayer().y);
+        Coordinate[] before = new Coordinate[boxCount];
+        Coordinate[] after = new Coordinate[boxCount];
+        for (int i = chain.size() - 1; i > 0; i--) {
+            decodeBoxes(chain.get(i), before);
+            decodeBoxes(chain.get(i - 1), after);
+            int from = movedCell(before, after);
+            int to = movedCell(after, before);
+            int dir = 0;
+            while (from + grid.step[dir] != to) {
+                dir++;
+            }
+            expander.flood(before, player);
+            plan.append(expander.walkTo(from - grid.step[dir]));
+            plan.append(Constants.MOVES[dir]);
+            player = from;
+        }
+        long now = System.nanoTime();
+        String moves = plan.toString();
+        ReplayValidator.ValidationResult validation = ReplayValidator.validate(mapData, expander.itemsFor(initial), moves);
+        boolean solved = validation != null && validation.fullyValid && validation.solved;
+        stats.recordFirstIncumbent(now);
+        stats.setSuboptimalityBound(1.0);
+        stats.markFinish(now, false, moves.length(), chain.size() - 1, 0L);
+        Diagnostics.setSummary(stats.toSummaryString());
+        Diagnostics.markSearchFinish(solved, false);
+        return new SearchOutcome(solved ? moves : "", solved, solved ? moves : null, 1.0);
+    }
+
+    private int movedCell(Coordinate[] from, Coordinate[] to) {
+        outer:
+        for (Coordinate box : from) {
+            for (Coordinate other : to) {
+                if (box.x == other.x && box.y == other.y) {
+                    continue outer;
+                }
+            }
+            return grid.cell(box.x, box.y);
+        }
+        return -1;
+    }
+}
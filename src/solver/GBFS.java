@@ -1,42 +1,75 @@
 package solver;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+public final class GBFS implements SearchEngine {
+    public static int BEAM_WIDTH = 64;
+    public static int EVAL_THREADS = 1;
+    public static boolean ROOM_GUIDE = false;
 
-public final class GBFS {
     private static final char[] EMPTY_PATH = new char[0];
+    private static final double[] ANYTIME_WEIGHTS = {5.0, 3.0, 2.0, 1.5, 1.25, 1.0};
+    private static final int QUEUE_BOOST = 1000;
+    private static final int BEAM_WINDOW = 8;
+    private static final int BEAM_STALL_LAYERS = 32;
+    private static final int ROOM_WEIGHT = 4;
 
     private final char[][] mapData;
     private final Coordinate[] goalCoordinates;
     private final Deadlock deadlockDetector;
+    private final RoomGraph roomGraph;
     private final SearchStats stats = new SearchStats();
 
     private final int rows;
     private final int cols;
 
-    private final int[][] visitStamp;
-    private final int[][] parentX;
-    private final int[][] parentY;
-    private final char[][] moveToHere;
-    private int visitToken = 1;
+    private final GridKernel grid;
+    private final GridKernel.Stamp visited;
+    private final int[] parentCell;
+    private final char[] moveToHere;
+
+    private final GridKernel.Stamp boxMarks;
+    private final int[] boxIds;
 
-    private final int[][] boxStamp;
-    private final int[][] boxIds;
-    private int boxToken = 1;
+    private final GridKernel.IntQueue queue;
 
-    private final int[] queueX;
-    private final int[] queueY;
+    private final long[] boxBits;
+    private final long[] freeBits;
+    private final long[] candidateBits;
+    private final long[] scratchBits;
+    private final long[] shiftedBits;
+    private final int[] ring;
 
     private final HashSet<Long> localSignatureBuffer = new HashSet<>();
+    private final ChildContext main;
+    private final List<State> pendingChildren = new ArrayList<>();
+    private ChildContext[] workers;
+    private ForkJoinPool evalPool;
+    private EndgameTable endgame;
 
     private State bestFrontierCandidate;
     private State bestProgressCandidate;
     private State deepestFrontierCandidate;
+    private State plateauExit;
     private final long timeBudgetNanos;
 
+    private PriorityQueue<AnytimeNode> anytimeOpen;
+    private int incumbentPushes;
+    private volatile SearchOutcome incumbent;
+
     private final Comparator<State> stateComparator = (a, b) -> {
         int cmp = Integer.compare(a.getFCost(), b.getFCost());
         if (cmp != 0) {
@@ -78,21 +111,191 @@ public final class GBFS {
         this.mapData = mapData;
         this.goalCoordinates = goalCoordinates;
         this.deadlockDetector = new Deadlock(mapData, goalCoordinates);
+        this.roomGraph = ROOM_GUIDE ? RoomGraph.build(mapData, goalCoordinates) : null;
         this.rows = mapData.length;
         this.cols = rows == 0 ? 0 : mapData[0].length;
-        this.visitStamp = new int[rows][cols];
-        this.parentX = new int[rows][cols];
-        this.parentY = new int[rows][cols];
-        this.moveToHere = new char[rows][cols];
-        this.boxStamp = new int[rows][cols];
-        this.boxIds = new int[rows][cols];
-        this.queueX = new int[Math.max(1, rows * cols)];
-        this.queueY = new int[Math.max(1, rows * cols)];
+        this.grid = GridKernel.of(mapData, goalCoordinates);
+        this.visited = grid.newStamp();
+        this.parentCell = new int[grid.size];
+        this.moveToHere = new char[grid.size];
+        this.boxMarks = grid.newStamp();
+        this.boxIds = new int[grid.size];
+        this.queue = grid.newQueue();
+        this.boxBits = CellBits.create(grid.size);
+        this.freeBits = CellBits.create(grid.size);
+        this.candidateBits = CellBits.create(grid.size);
+        this.scratchBits = CellBits.create(grid.size);
+        this.shiftedBits = CellBits.create(grid.size);
+        int w = grid.width;
+        this.ring = new int[] {-w, -w + 1, 1, w + 1, w, w - 1, -1, -w - 1};
         long millis = Math.max(1L, timeBudgetMillis);
         this.timeBudgetNanos = millis * 1_000_000L;
+        this.main = new ChildContext(deadlockDetector, stats, localSignatureBuffer);
     }
 
+    private final class ChildContext {
+        final Deadlock deadlock;
+        final SearchStats stats;
+        final HashSet<Long> signatures;
+        final PushFilter.Candidate candidate = new PushFilter.Candidate();
+        final PushPipeline pipeline;
+        boolean deferLearning;
+        boolean learnRequested;
+
+        ChildContext(Deadlock deadlock, SearchStats stats, HashSet<Long> signatures) {
+            this.deadlock = deadlock;
+            this.stats = stats;
+            this.signatures = signatures;
+            this.pipeline = buildPipeline(this);
+        }
+
+        State evaluate(State child, Map<Long, Long> bestCosts) {
+            learnRequested = false;
+            candidate.set(child, encodeCost(child));
+            candidate.bestCosts = bestCosts;
+            if (!pipeline.accepts(candidate)) {
+                return null;
+            }
+            stats.recordBoxesOnGoalsCandidate(child.getBoxesOnGoals());
+            if (child.getLastPushProgress() > 0) {
+                stats.recordProgressTiebreakHit();
+            }
+            int heuristic = Heuristic.evaluate(child);
+            if (heuristic == Integer.MAX_VALUE) {
+                return null;
+            }
+            if (roomGraph != null) {
+                heuristic += ROOM_WEIGHT * roomGraph.cost(child.getBoxes());
+            }
+            return child.withHeuristic(heuristic);
+        }
+
+        void learnPattern(Coordinate[] boxes, int movedIdx) {
+            if (deferLearning) {
+                learnRequested = true;
+                return;
+            }
+            if (deadlock.learnPattern(boxes, movedIdx)) {
+                stats.recordPatternLearned();
+            }
+        }
+    }
+
+    private PushPipeline buildPipeline(ChildContext ctx) {
+        return new PushPipeline(
+                PushFilter.of("local_dup", c -> {
+                    if (ctx.signatures.add(c.signature)) {
+                        return false;
+                    }
+                    ctx.stats.recordDuplicatePruned();
+                    return true;
+                }),
+                PushFilter.of("global_dup", c -> {
+                    Long previous = c.bestCosts.get(c.signature);
+                    if (previous == null || previous > c.encodedCost) {
+                        return false;
+                    }
+                    ctx.stats.recordDuplicatePruned();
+                    return true;
+                }),
+                PushFilter.of("pattern", c -> {
+                    if (!ctx.deadlock.matchesLearnedPattern(c.boxes, c.movedIdx)) {
+                        return false;
+                    }
+                    ctx.stats.recordPatternPruned();
+                    return true;
+                }),
+                PushFilter.of("region", c -> {
+                    if (ctx.deadlock.regionHasGoalForMove(c.boxes, c.movedIdx, c.x, c.y)
+                            || ctx.deadlock.regionHasGoalIgnoringBoxes(c.x, c.y)) {
+                        return false;
+                    }
+                    ctx.stats.recordRegionPostPruned();
+                    return true;
+                }),
+                PushFilter.of("room", c -> {
+                    if (ctx.deadlock.roomHasEnoughGoalsForMove(c.boxes, c.movedIdx, c.x, c.y)) {
+                        return false;
+                    }
+                    ctx.stats.recordRegionPruned();
+                    return true;
+                }),
+                PushFilter.of("component", c -> {
+                    if (ctx.deadlock.compHasEnoughGoalsForMove(c.boxes, c.movedIdx, c.x, c.y)) {
+                        return false;
+                    }
+                    ctx.stats.recordRegionPruned();
+                    return true;
+                }),
+                PushFilter.of("corner", c -> {
+                    if (!ctx.deadlock.isCornerNoGoal(c.x, c.y)) {
+                        return false;
+                    }
+                    ctx.stats.recordCornerPruned();
+                    return true;
+                }),
+                PushFilter.of("local_freeze", c -> {
+                    if (!ctx.deadlock.isLocalFreeze(c.x, c.y, c.boxes)) {
+                        return false;
+                    }
+                    ctx.stats.recordFreezePruned();
+                    ctx.learnPattern(c.boxes, c.movedIdx);
+                    return true;
+                }),
+                PushFilter.of("wall_line", c -> {
+                    if (!ctx.deadlock.isWallLineFreeze(c.x, c.y, c.boxes)) {
+                        return false;
+                    }
+                    ctx.stats.recordWallLinePruned();
+                    ctx.learnPattern(c.boxes, c.movedIdx);
+                    return true;
+                }),
+                PushFilter.of("room_plan", c -> {
+                    if (roomGraph == null || roomGraph.cost(c.boxes) < RoomGraph.INF) {
+                        return false;
+                    }
+                    ctx.stats.recordRoomPlanPruned();
+                    return true;
+                }),
+                PushFilter.of("deadlock", c -> {
+                    if (!ctx.deadlock.isDeadlock(c.state)) {
+                        return false;
+                    }
+                    ctx.stats.recordFreezePruned();
+                    ctx.learnPattern(c.boxes, c.movedIdx);
+                    return true;
+                }));
+    }
+
+    @Override
     public SearchOutcome search(State initial) {
+        endgame = EndgameTable.start(mapData, goalCoordinates);
+        if (EVAL_THREADS > 1) {
+            workers = new ChildContext[EVAL_THREADS];
+            for (int i = 0; i < workers.length; i++) {
+                SearchStats workerStats = new SearchStats();
+                workerStats.reset(0L);
+                workers[i] = new ChildContext(new Deadlock(mapData, goalCoordinates), workerStats, new HashSet<>());
+                workers[i].deferLearning = true;
+            }
+            evalPool = new ForkJoinPool(EVAL_THREADS);
+        }
+        try {
+            return searchFrom(initial);
+        } finally {
+            if (endgame != null) {
+                endgame.cancel();
+            }
+            if (evalPool != null) {
+                evalPool.shutdownNow();
+                evalPool = null;
+            }
+            workers = null;
+            pendingChildren.clear();
+        }
+    }
+
+    private SearchOutcome searchFrom(State initial) {
         PriorityQueue<State> open = new PriorityQueue<>(stateComparator);
         Map<Long, Long> bestCosts = new HashMap<>();
 
@@ -112,360 +315,867 @@ public final class GBFS {
         bestProgressCandidate = initial;
         deepestFrontierCandidate = initial;
 
+        if (Checkpoint.isEnabled()) {
+            List<State> restoredOpen = new ArrayList<>();
+            Map<Long, Long> restoredCosts = new HashMap<>();
+            if (Checkpoint.restore(mapData, goalCoordinates, initial, restoredOpen, restoredCosts)) {
+                open.clear();
+                open.addAll(restoredOpen);
+                bestCosts.putAll(restoredCosts);
+                restoredOpen.forEach(this::updateFrontierCandidates);
+                stats.recordOpenSize(open.size());
+            }
+        }
+        long checkpointInterval = Math.max(1L, Checkpoint.INTERVAL_MS) * 1_000_000L;
+        long nextCheckpoint = startTime + checkpointInterval;
+        long checkpointCost = 0L;
+        // The final checkpoint is written inside the budget, so the search proper stops early by the reserve.
+        long searchDeadline = Checkpoint.isEnabled()
+                ? deadline - Math.min(timeBudgetNanos / 4, Math.max(0L, Checkpoint.RESERVE_MS) * 1_000_000L)
+                : deadline;
+
+        if (SearchMode.is(SearchMode.HILL_CLIMB)) {
+            State climbed = hillClimb(initial, deadline);
+            if (climbed.isGoal(goalCoordinates)) {
+                return solved(initial, climbed, System.nanoTime(), bestCosts.size());
+            }
+            stats.recordPlateauFallback();
+            if (climbed != initial && bestCosts.putIfAbsent(climbed.getHash(), encodeCost(climbed)) == null) {
+                open.add(climbed);
+                updateFrontierCandidates(climbed);
+                stats.recordOpenSize(open.size());
+            }
+        }
+        if (SearchMode.is(SearchMode.WIDTH)) {
+            return widthSearch(initial, bestCosts, deadline);
+        }
+        if (SearchMode.is(SearchMode.MULTI_QUEUE)) {
+            return multiQueueSearch(initial, bestCosts, deadline);
+        }
+        if (SearchMode.is(SearchMode.BEAM)) {
+            return beamSearch(initial, deadline);
+        }
+
+        Consumer<State> sink = child -> {
+            open.add(child);
+            updateFrontierCandidates(child);
+            stats.recordOpenSize(open.size());
+        };
         while (!open.isEmpty()) {
             long now = System.nanoTime();
-            if (now > deadline) {
+            if (now > searchDeadline) {
                 break;
             }
+            if (Checkpoint.isEnabled() && now >= nextCheckpoint) {
+                if (now + checkpointCost < searchDeadline) {
+                    checkpointCost = writeCheckpoint(initial, open, bestCosts, searchDeadline);
+                }
+                nextCheckpoint = System.nanoTime() + checkpointInterval;
+            }
             State current = open.poll();
             stats.incrementExpanded();
             updateFrontierCandidates(current);
 
             if (current.isGoal(goalCoordinates)) {
                 stats.recordFirstIncumbent(now);
-                stats.markFinish(now, false, current.getDepth(), current.getPushes(), bestCosts.size());
-                Diagnostics.setSummary(stats.toSummaryString());
-                Diagnostics.markSearchFinish(true, false);
-                String plan = current.reconstructPlan();
-                plan = ensureReplayValid(initial, plan);
-                return new SearchOutcome(plan, true, plan);
+                if (SearchMode.is(SearchMode.ANYTIME)) {
+                    return improveIncumbent(initial, current, open, bestCosts, deadline);
+                }
+                return solved(initial, current, now, bestCosts.size());
+            }
+            State finished = endgame == null || SearchMode.is(SearchMode.ANYTIME) ? null : endgame.finish(current);
+            if (finished != null) {
+                stats.recordEndgameHit();
+                stats.recordFirstIncumbent(now);
+                return solved(initial, finished, now, bestCosts.size());
             }
 
-            expand(current, open, bestCosts, deadline);
+            expand(current, bestCosts, searchDeadline, sink);
         }
 
         long finishTime = System.nanoTime();
-        boolean limitHit = finishTime > deadline && !open.isEmpty();
+        boolean limitHit = finishTime > searchDeadline && !open.isEmpty();
+        if (limitHit && Checkpoint.isEnabled()) {
+            writeCheckpoint(initial, open, bestCosts, deadline);
+        }
+        return unsolved(finishTime, limitHit, bestCosts.size());
+    }
 
+    /** Saves a checkpoint that must be complete by {@code limit}; returns how long the attempt took. */
+    private long writeCheckpoint(State initial, PriorityQueue<State> open, Map<Long, Long> bestCosts, long limit) {
+        long begin = System.nanoTime();
+        if (Checkpoint.save(mapData, goalCoordinates, initial, open, bestCosts, limit)) {
+            stats.recordCheckpointWritten();
+        }
+        return System.nanoTime() - begin;
+    }
+
+    private SearchOutcome unsolved(long finishTime, boolean limitHit, int closedSize) {
         State fallback = selectFallbackState();
         String plan = fallback.reconstructPlan();
 
-        stats.markFinish(finishTime, limitHit, fallback.getDepth(), fallback.getPushes(), bestCosts.size());
-        Diagnostics.setSummary(stats.toSummaryString());
+        stats.markFinish(finishTime, limitHit, fallback.getDepth(), fallback.getPushes(), closedSize);
+        Diagnostics.setSummary(stats.toSummaryString() + " " + main.pipeline.describe());
         Diagnostics.markSearchFinish(false, limitHit);
 
         return new SearchOutcome(plan, false, null);
     }
 
-    public SearchStats getStatistics() {
-        return stats.snapshot();
+    private SearchOutcome widthSearch(State initial, Map<Long, Long> bestCosts, long deadline) {
+        Novelty novelty = new Novelty(grid, initial.getBoxes().length);
+        PriorityQueue<WidthNode> open = new PriorityQueue<>((a, b) -> {
+            int cmp = Integer.compare(a.width, b.width);
+            return cmp != 0 ? cmp : stateComparator.compare(a.state, b.state);
+        });
+        open.add(new WidthNode(initial, novelty.evaluate(initial.getBoxes(), initial.getBoxesOnGoals())));
+        while (!open.isEmpty()) {
+            long now = System.nanoTime();
+            if (now > deadline) {
+                break;
+            }
+            State current = open.poll().state;
+            stats.incrementExpanded();
+            updateFrontierCandidates(current);
+            if (current.isGoal(goalCoordinates)) {
+                stats.recordFirstIncumbent(now);
+                return solved(initial, current, now, bestCosts.size());
+            }
+            expand(current, bestCosts, deadline, child -> {
+                int width = novelty.evaluate(child.getBoxes(), child.getBoxesOnGoals());
+                if (width == 1) {
+                    stats.recordNovelState();
+                }
+                open.add(new WidthNode(child, width));
+                updateFrontierCandidates(child);
+                stats.recordOpenSize(open.size());
+            });
+        }
+        long finishTime = System.nanoTime();
+        return unsolved(finishTime, finishTime > deadline && !open.isEmpty(), bestCosts.size());
     }
 
-    private void expand(State state,
-                        PriorityQueue<State> open,
-                        Map<Long, Long> bestCosts,
-                        long deadline) {
-        resetWorkingArrays(state);
-        int startX = state.getPlayer().x;
-        int startY = state.getPlayer().y;
-        markVisited(startX, startY);
-        parentX[startY][startX] = startX;
-        parentY[startY][startX] = startY;
-        moveToHere[startY][startX] = '\0';
-        int head = 0;
-        int tail = 0;
-        queueX[tail] = startX;
-        queueY[tail] = startY;
-        tail++;
-        localSignatureBuffer.clear();
-
-        while (head < tail) {
-            if (System.nanoTime() > deadline) {
-                return;
+    private SearchOutcome multiQueueSearch(State initial, Map<Long, Long> bestCosts, long deadline) {
+        List<PriorityQueue<State>> queues = List.of(
+                new PriorityQueue<>(stateComparator),
+                new PriorityQueue<>(Comparator.comparingInt((State s) -> -s.getBoxesOnGoals()).thenComparing(stateComparator)),
+                new PriorityQueue<>(Comparator.comparingLong(State::getGoalDistanceSquaredSum).thenComparing(stateComparator)),
+                new PriorityQueue<>(stateComparator));
+        int preferredQueue = queues.size() - 1;
+        long[] priority = new long[queues.size()];
+        HashSet<Long> expanded = new HashSet<>();
+        for (PriorityQueue<State> queue : queues) {
+            queue.add(initial);
+        }
+        int[] best = {initial.getHeuristic(), initial.getBoxesOnGoals()};
+        boolean[] progressed = new boolean[1];
+        while (true) {
+            long now = System.nanoTime();
+            if (now > deadline) {
+                break;
             }
-            int px = queueX[head];
-            int py = queueY[head];
-            head++;
-            considerPushesFrom(state, px, py, startX, startY, open, bestCosts);
-            for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                int nx = px + Constants.DIRECTION_X[dir];
-                int ny = py + Constants.DIRECTION_Y[dir];
-                if (!inBounds(nx, ny)) {
-                    continue;
+            int q = -1;
+            for (int i = 0; i < queues.size(); i++) {
+                if (!queues.get(i).isEmpty() && (q < 0 || priority[i] < priority[q])) {
+                    q = i;
                 }
-                if (isVisited(nx, ny)) {
-                    continue;
+            }
+            if (q < 0) {
+                break;
+            }
+            State current = queues.get(q).poll();
+            if (!expanded.add(current.getInsertionId())) {
+                continue;
+            }
+            priority[q]++;
+            stats.incrementExpanded();
+            updateFrontierCandidates(current);
+            if (current.isGoal(goalCoordinates)) {
+                stats.recordFirstIncumbent(now);
+                return solved(initial, current, now, bestCosts.size());
+            }
+            int[] assigned = Heuristic.assignment(current.getBoxes());
+            progressed[0] = false;
+            expand(current, bestCosts, deadline, child -> {
+                for (int i = 0; i < preferredQueue; i++) {
+                    queues.get(i).add(child);
                 }
-                if (mapData[ny][nx] == Constants.WALL) {
-                    continue;
+                if (isPreferredPush(current, child, assigned) || isRoomPlanPush(current, child)) {
+                    queues.get(preferredQueue).add(child);
+                    stats.recordPreferredPush();
                 }
-                if (hasBoxAt(nx, ny)) {
-                    continue;
+                if (child.getHeuristic() < best[0] || child.getBoxesOnGoals() > best[1]) {
+                    best[0] = Math.min(best[0], child.getHeuristic());
+                    best[1] = Math.max(best[1], child.getBoxesOnGoals());
+                    progressed[0] = true;
                 }
-                markVisited(nx, ny);
-                parentX[ny][nx] = px;
-                parentY[ny][nx] = py;
-                moveToHere[ny][nx] = Constants.MOVES[dir];
-                queueX[tail] = nx;
-                queueY[tail] = ny;
-                tail++;
+                updateFrontierCandidates(child);
+            });
+            if (progressed[0]) {
+                priority[q] -= QUEUE_BOOST;
             }
+            int total = 0;
+            for (PriorityQueue<State> queue : queues) {
+                total += queue.size();
+            }
+            stats.recordOpenSize(total);
         }
+        long finishTime = System.nanoTime();
+        return unsolved(finishTime, finishTime > deadline, bestCosts.size());
     }
 
-    private void considerPushesFrom(State state,
-                                    int px,
-                                    int py,
-                                    int startX,
-                                    int startY,
-                                    PriorityQueue<State> open,
-                                    Map<Long, Long> bestCosts) {
-        Coordinate[] parentBoxes = state.getBoxes();
-        for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-            int boxX = px + Constants.DIRECTION_X[dir];
-            int boxY = py + Constants.DIRECTION_Y[dir];
-            if (!inBounds(boxX, boxY)) {
-                continue;
+    private SearchOutcome beamSearch(State initial, long deadline) {
+        Map<Long, Long> window = new HashMap<>();
+        ArrayDeque<long[]> windowLayers = new ArrayDeque<>();
+        for (int width = BEAM_WIDTH; ; width *= 2) {
+            stats.recordBeamPass();
+            window.clear();
+            windowLayers.clear();
+            window.put(initial.getHash(), encodeCost(initial));
+            State[] layer = {initial};
+            int layerSize = 1;
+            int bestHeuristic = initial.getHeuristic();
+            int stalled = 0;
+            long stallLimit = (long) BEAM_STALL_LAYERS * Math.max(1, width / BEAM_WIDTH);
+            boolean truncated = false;
+            while (layerSize > 0 && stalled++ < stallLimit) {
+                List<State> children = new ArrayList<>();
+                for (int i = 0; i < layerSize; i++) {
+                    if (System.nanoTime() > deadline) {
+                        return unsolved(System.nanoTime(), true, window.size());
+                    }
+                    stats.incrementExpanded();
+                    expand(layer[i], window, deadline, child -> {
+                        children.add(child);
+                        updateFrontierCandidates(child);
+                    });
+                }
+                long now = System.nanoTime();
+                long[] keys = new long[children.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    State child = children.get(i);
+                    if (child.isGoal(goalCoordinates)) {
+                        stats.recordFirstIncumbent(now);
+                        return solved(initial, child, now, window.size());
+                    }
+                    keys[i] = child.getHash();
+                    if (child.getHeuristic() < bestHeuristic) {
+                        bestHeuristic = child.getHeuristic();
+                        stalled = 0;
+                    }
+                }
+                windowLayers.addLast(keys);
+                if (windowLayers.size() > BEAM_WINDOW) {
+                    for (long key : windowLayers.removeFirst()) {
+                        window.remove(key);
+                    }
+                }
+                layer = children.toArray(new State[0]);
+                layerSize = Math.min(width, layer.length);
+                truncated |= layerSize < layer.length;
+                selectBest(layer, layerSize);
+                stats.recordOpenSize(layerSize);
             }
-            if (!hasBoxAt(boxX, boxY)) {
-                continue;
+            if ((!truncated && layerSize == 0) || width >= Integer.MAX_VALUE / 2) {
+                return unsolved(System.nanoTime(), false, window.size());
             }
-            int boxIdx = boxIds[boxY][boxX];
-            int destX = boxX + Constants.DIRECTION_X[dir];
-            int destY = boxY + Constants.DIRECTION_Y[dir];
-            if (!inBounds(destX, destY)) {
-                continue;
+        }
+    }
+
+    private void selectBest(State[] items, int k) {
+        int lo = 0;
+        int hi = items.length - 1;
+        while (lo < hi && k < items.length) {
+            State pivot = items[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (stateComparator.compare(items[i], pivot) < 0) {
+                    i++;
+                }
+                while (stateComparator.compare(items[j], pivot) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    State tmp = items[i];
+                    items[i] = items[j];
+                    items[j] = tmp;
+                    i++;
+                    j--;
+                }
             }
-            if (mapData[destY][destX] == Constants.WALL) {
-                continue;
+            if (k - 1 <= j) {
+                hi = j;
+            } else if (k - 1 >= i) {
+                lo = i;
+            } else {
+                return;
             }
-            if (hasBoxAt(destX, destY)) {
+        }
+    }
+
+    private static boolean isPreferredPush(State parent, State child, int[] assigned) {
+        Coordinate[] before = parent.getBoxes();
+        Coordinate moved = child.getBoxes()[child.getMovedBoxIndex()];
+        for (int i = 0; i < before.length; i++) {
+            if (child.hasBoxAt(before[i].x, before[i].y)) {
                 continue;
             }
+            int goal = assigned[i];
+            return goal >= 0 && Heuristic.goalDistance(goal, moved.x, moved.y) < Heuristic.goalDistance(goal, before[i].x, before[i].y);
+        }
+        return false;
+    }
 
-            boolean strictRegion = deadlockDetector.regionHasGoalForMove(parentBoxes, boxIdx, destX, destY);
-            boolean looseRegion = strictRegion || deadlockDetector.regionHasGoalIgnoringBoxes(destX, destY);
-            if (!looseRegion) {
-                stats.recordRegionPrePruned();
-                continue;
+    private boolean isRoomPlanPush(State parent, State child) {
+        return roomGraph != null && roomGraph.cost(child.getBoxes()) < roomGraph.cost(parent.getBoxes());
+    }
+
+    private static final class WidthNode {
+        final State state;
+        final int width;
+
+        WidthNode(State state, int width) {
+            this.state = state;
+            this.width = width;
+        }
+    }
+
+    private SearchOutcome solved(State initial, State goal, long now, int closedSize) {
+        stats.markFinish(now, false, goal.getDepth(), goal.getPushes(), closedSize);
+        Diagnostics.setSummary(stats.toSummaryString() + " " + main.pipeline.describe());
+        Diagnostics.markSearchFinish(true, false);
+        String plan = ensureReplayValid(initial, goal.reconstructPlan());
+        return new SearchOutcome(plan, true, plan);
+    }
+
+    private State hillClimb(State initial, long deadline) {
+        State current = initial;
+        while (!current.isGoal(goalCoordinates)) {
+            State anchor = current;
+            Map<Long, Long> seen = new HashMap<>();
+            seen.put(anchor.getHash(), encodeCost(anchor));
+            ArrayDeque<State> plateau = new ArrayDeque<>();
+            plateau.add(anchor);
+            plateauExit = null;
+            while (plateauExit == null && !plateau.isEmpty()) {
+                if (System.nanoTime() > deadline) {
+                    return anchor;
+                }
+                State state = plateau.poll();
+                stats.incrementExpanded();
+                expand(state, seen, deadline, child -> {
+                    if (plateauExit != null) {
+                        return;
+                    }
+                    updateFrontierCandidates(child);
+                    if (child.getHeuristic() < anchor.getHeuristic()
+                            || child.getBoxesOnGoals() > anchor.getBoxesOnGoals()) {
+                        plateauExit = child;
+                    } else {
+                        plateau.add(child);
+                        stats.recordOpenSize(plateau.size());
+                    }
+                });
+            }
+            if (plateauExit == null) {
+                return anchor;
             }
+            stats.recordHillClimbStep();
+            current = plateauExit;
+        }
+        return current;
+    }
 
-            char[] prePushWalk = reconstructPath(startX, startY, px, py);
-            Coordinate[] updatedBoxes = copyBoxes(parentBoxes);
-            updatedBoxes[boxIdx] = new Coordinate(destX, destY);
-            Coordinate nextPlayer = new Coordinate(boxX, boxY);
-            State pushState = State.push(state,
-                    nextPlayer,
-                    updatedBoxes,
-                    Constants.MOVES[dir],
-                    state.getHeuristic(),
-                    prePushWalk);
+    @Override
+    public SearchStats getStatistics() {
+        return stats.snapshot();
+    }
 
-            State finalState = slideAlongCorridor(pushState, dir);
+    public SearchOutcome getIncumbent() {
+        return incumbent;
+    }
 
-            Coordinate[] finalBoxes = finalState.getBoxes();
-            int movedIdx = finalState.getMovedBoxIndex();
-            if (movedIdx < 0) {
-                continue;
+    private SearchOutcome improveIncumbent(State initial,
+                                           State first,
+                                           PriorityQueue<State> open,
+                                           Map<Long, Long> bestCosts,
+                                           long deadline) {
+        State best = first;
+        String bestPlan = ensureReplayValid(initial, first.reconstructPlan());
+        incumbentPushes = first.getPushes();
+        publishIncumbent(bestPlan, Double.POSITIVE_INFINITY);
+
+        List<AnytimeNode> carried = new ArrayList<>(open.size());
+        for (State state : open) {
+            AnytimeNode node = anytimeNode(state);
+            if (node != null) {
+                carried.add(node);
             }
-            Coordinate moved = finalBoxes[movedIdx];
+        }
+        open.clear();
 
-            boolean postStrict = deadlockDetector.regionHasGoalForMove(finalBoxes, movedIdx, moved.x, moved.y);
-            boolean postLoose = postStrict || deadlockDetector.regionHasGoalIgnoringBoxes(moved.x, moved.y);
-            if (!postLoose) {
-                stats.recordRegionPostPruned();
-                continue;
+        double bound = Double.POSITIVE_INFINITY;
+        for (double weight : ANYTIME_WEIGHTS) {
+            anytimeOpen = new PriorityQueue<>(anytimeOrder(weight));
+            anytimeOpen.addAll(carried);
+            boolean converged = false;
+            while (!anytimeOpen.isEmpty()) {
+                if (System.nanoTime() > deadline) {
+                    break;
+                }
+                AnytimeNode head = anytimeOpen.peek();
+                if (incumbentPushes <= head.state.getPushes() + weight * head.lowerBound) {
+                    converged = true;
+                    break;
+                }
+                anytimeOpen.poll();
+                State state = head.state;
+                if (state.getPushes() + head.lowerBound >= incumbentPushes) {
+                    continue;
+                }
+                if (state.isGoal(goalCoordinates)) {
+                    String raw = state.reconstructPlan();
+                    String plan = ensureReplayValid(initial, raw);
+                    if (plan.equals(raw)) {
+                        best = state;
+                        bestPlan = plan;
+                        incumbentPushes = state.getPushes();
+                        stats.recordIncumbentImproved();
+                        publishIncumbent(bestPlan, weight);
+                    }
+                    continue;
+                }
+                stats.incrementExpanded();
+                expand(state, bestCosts, deadline, this::offerAnytime);
             }
-            if (!deadlockDetector.roomHasEnoughGoalsForMove(finalBoxes, movedIdx, moved.x, moved.y)) {
-                stats.recordRegionPruned();
-                continue;
+            carried = new ArrayList<>(anytimeOpen);
+            bound = suboptimalityBound(converged || anytimeOpen.isEmpty() ? weight : Double.POSITIVE_INFINITY, carried);
+            publishIncumbent(bestPlan, bound);
+            if (!converged && !anytimeOpen.isEmpty()) {
+                break;
             }
-            if (!deadlockDetector.compHasEnoughGoalsForMove(finalBoxes, movedIdx, moved.x, moved.y)) {
-                stats.recordRegionPruned();
-                continue;
+        }
+        anytimeOpen = null;
+
+        long finishTime = System.nanoTime();
+        stats.setSuboptimalityBound(bound);
+        stats.markFinish(finishTime, finishTime > deadline, best.getDepth(), best.getPushes(), bestCosts.size());
+        Diagnostics.setSummary(stats.toSummaryString() + " " + main.pipeline.describe());
+        Diagnostics.markSearchFinish(true, finishTime > deadline);
+        return incumbent;
+    }
+
+    private void publishIncumbent(String plan, double bound) {
+        incumbent = new SearchOutcome(plan, true, plan, bound);
+    }
+
+    private void offerAnytime(State child) {
+        AnytimeNode node = anytimeNode(child);
+        if (node != null) {
+            anytimeOpen.add(node);
+            stats.recordOpenSize(anytimeOpen.size());
+        }
+    }
+
+    private AnytimeNode anytimeNode(State state) {
+        int lowerBound = Heuristic.pushLowerBound(state);
+        if (lowerBound == Integer.MAX_VALUE || state.getPushes() + lowerBound >= incumbentPushes) {
+            return null;
+        }
+        return new AnytimeNode(state, lowerBound);
+    }
+
+    private double suboptimalityBound(double weight, List<AnytimeNode> frontier) {
+        int floor = incumbentPushes;
+        for (AnytimeNode node : frontier) {
+            floor = Math.min(floor, node.state.getPushes() + node.lowerBound);
+        }
+        if (floor <= 0) {
+            return weight;
+        }
+        return Math.min(weight, (double) incumbentPushes / floor);
+    }
+
+    private static Comparator<AnytimeNode> anytimeOrder(double weight) {
+        return (a, b) -> {
+            int cmp = Double.compare(a.state.getPushes() + weight * a.lowerBound,
+                    b.state.getPushes() + weight * b.lowerBound);
+            if (cmp != 0) {
+                return cmp;
             }
-            if (deadlockDetector.isCornerNoGoal(moved.x, moved.y)) {
-                stats.recordCornerPruned();
-                continue;
+            cmp = Integer.compare(a.lowerBound, b.lowerBound);
+            if (cmp != 0) {
+                return cmp;
             }
-            if (deadlockDetector.quickFrozenSquare(moved.x, moved.y, finalBoxes)) {
-                stats.recordFreezePruned();
-                continue;
+            return Long.compare(a.state.getInsertionId(), b.state.getInsertionId());
+        };
+    }
+
+    private static final class AnytimeNode {
+        final State state;
+        final int lowerBound;
+
+        AnytimeNode(State state, int lowerBound) {
+            this.state = state;
+            this.lowerBound = lowerBound;
+        }
+    }
+
+    private void expand(State state,
+                        Map<Long, Long> bestCosts,
+                        long deadline,
+                        Consumer<State> sink) {
+        if (System.nanoTime() > deadline) {
+            return;
+        }
+        resetWorkingArrays(state);
+        int remaining = markPushCandidates(reachOf(state));
+        if (remaining == 0) {
+            return;
+        }
+        int start = grid.cell(state.getPlayer().x, state.getPlayer().y);
+        visited.next();
+        visited.mark(start);
+        parentCell[start] = start;
+        moveToHere[start] = '\0';
+        queue.clear();
+        queue.add(start);
+        localSignatureBuffer.clear();
+
+        while (!queue.isEmpty()) {
+            int p = queue.poll();
+            if (CellBits.get(candidateBits, p)) {
+                considerPushesFrom(state, p, start, bestCosts, sink);
+                if (--remaining == 0) {
+                    break;
+                }
             }
-            if (deadlockDetector.isWallLineFreeze(moved.x, moved.y, finalBoxes)) {
-                stats.recordWallLinePruned();
-                continue;
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = p + grid.step[dir];
+                if (visited.contains(n) || grid.wall[n] || boxMarks.contains(n)) {
+                    continue;
+                }
+                visited.mark(n);
+                parentCell[n] = p;
+                moveToHere[n] = Constants.MOVES[dir];
+                queue.add(n);
             }
-            if (deadlockDetector.isDeadlock(finalState)) {
-                stats.recordFreezePruned();
-                continue;
+        }
+        if (workers != null) {
+            evaluatePending(bestCosts, sink);
+        }
+    }
+
+    private long[] reachOf(State state) {
+        long[] reach = state.getReach();
+        if (reach != null) {
+            return reach;
+        }
+        reach = patchedReach(state);
+        if (reach == null) {
+            reach = CellBits.create(grid.size);
+            CellBits.set(reach, grid.cell(state.getPlayer().x, state.getPlayer().y));
+            CellBits.flood(reach, freeBits, grid.step, scratchBits);
+            stats.recordReachFlood();
+        }
+        state.setReach(reach);
+        return reach;
+    }
+
+    private long[] patchedReach(State state) {
+        State parent = state.getParent();
+        if (parent == null || parent.getReach() == null
+                || state.getLastMoveRun() != 1 || state.getPushes() - parent.getPushes() != 1) {
+            return null;
+        }
+        int dir = ReplayValidator.directionIndex(state.getLastMove());
+        int from = grid.cell(state.getPlayer().x, state.getPlayer().y);
+        int dest = from + grid.step[dir];
+        long[] previous = parent.getReach();
+        if (!CellBits.get(previous, from - grid.step[dir])) {
+            return null;
+        }
+        for (int step : grid.step) {
+            int n = from + step;
+            if (n != dest && CellBits.get(freeBits, n) && !CellBits.get(previous, n)) {
+                return null;
             }
+        }
+        if (CellBits.get(previous, dest) && splitsRegion(dest)) {
+            return null;
+        }
+        long[] reach = previous.clone();
+        CellBits.clear(reach, dest);
+        CellBits.set(reach, from);
+        return reach;
+    }
 
-            stats.recordBoxesOnGoalsCandidate(finalState.getBoxesOnGoals());
-            if (finalState.getLastPushProgress() > 0) {
-                stats.recordProgressTiebreakHit();
+    private boolean splitsRegion(int cell) {
+        int first = -1;
+        for (int i = 0; i < ring.length && first < 0; i++) {
+            if (!CellBits.get(freeBits, cell + ring[i])) {
+                first = i;
+            }
+        }
+        if (first < 0) {
+            return false;
+        }
+        int groups = 0;
+        boolean inRun = false;
+        boolean runHasSide = false;
+        for (int k = 1; k <= ring.length; k++) {
+            int i = (first + k) % ring.length;
+            boolean free = CellBits.get(freeBits, cell + ring[i]);
+            if (free) {
+                inRun = true;
+                runHasSide |= i % 2 == 0;
+            } else if (inRun) {
+                if (runHasSide) {
+                    groups++;
+                }
+                inRun = false;
+                runHasSide = false;
             }
+        }
+        return groups > 1;
+    }
 
-            long childSignature = finalState.getHash();
-            if (!localSignatureBuffer.add(childSignature)) {
-                stats.recordDuplicatePruned();
-                continue;
+    private int markPushCandidates(long[] reach) {
+        Arrays.fill(candidateBits, 0L);
+        for (int step : grid.step) {
+            CellBits.shifted(boxBits, step, scratchBits);
+            CellBits.shifted(freeBits, 2 * step, shiftedBits);
+            for (int i = 0; i < candidateBits.length; i++) {
+                candidateBits[i] |= reach[i] & scratchBits[i] & shiftedBits[i];
             }
+        }
+        int count = 0;
+        for (long word : candidateBits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
 
-            long encoded = encodeCost(finalState);
-            Long previous = bestCosts.get(childSignature);
-            if (previous != null && previous <= encoded) {
-                stats.recordDuplicatePruned();
+    private void considerPushesFrom(State state,
+                                    int p,
+                                    int start,
+                                    Map<Long, Long> bestCosts,
+                                    Consumer<State> sink) {
+        Coordinate[] parentBoxes = state.getBoxes();
+        for (int dir = 0; dir < grid.step.length; dir++) {
+            int box = p + grid.step[dir];
+            if (!boxMarks.contains(box)) {
                 continue;
             }
-
-            int heuristic = Heuristic.evaluate(finalState);
-            if (heuristic == Integer.MAX_VALUE) {
+            int dest = box + grid.step[dir];
+            if (grid.wall[dest] || boxMarks.contains(dest)) {
                 continue;
             }
-            finalState = finalState.withHeuristic(heuristic);
+            int boxIdx = boxIds[box];
+            int destX = grid.x(dest);
+            int destY = grid.y(dest);
 
-            bestCosts.put(childSignature, encoded);
+            if (!regionAllows(parentBoxes, boxIdx, destX, destY)) {
+                stats.recordRegionPrePruned();
+                continue;
+            }
 
-            open.add(finalState);
-            updateFrontierCandidates(finalState);
-            stats.recordOpenSize(open.size());
+            char[] prePushWalk = reconstructPath(start, p);
+            int end = slideAlongCorridor(parentBoxes, boxIdx, dest, dir);
+            int run = 1 + Math.abs(end - dest) / Math.abs(grid.step[dir]);
+            offerChild(macroPush(state, boxIdx, end, dir, run, prePushWalk), bestCosts, sink);
+            GoalRooms.Macro packing = GoalRooms.lookup(end, dir, parentBoxes, boxIdx);
+            if (packing != null) {
+                offerChild(goalRoomMacro(state, boxIdx, dir, run, prePushWalk, packing), bestCosts, sink);
+            }
         }
     }
 
-    private State slideAlongCorridor(State baseState, int dir) {
-        State current = baseState;
-        int movedIdx = current.getMovedBoxIndex();
-        if (movedIdx < 0) {
-            return current;
+    private void offerChild(State child, Map<Long, Long> bestCosts, Consumer<State> sink) {
+        if (child.getMovedBoxIndex() < 0) {
+            return;
         }
+        if (workers != null) {
+            if (localSignatureBuffer.add(child.getHash())) {
+                pendingChildren.add(child);
+            } else {
+                stats.recordDuplicatePruned();
+            }
+            return;
+        }
+        child = main.evaluate(child, bestCosts);
+        if (child != null) {
+            insertChild(child, bestCosts, sink);
+        }
+    }
 
-        final int dx = Constants.DIRECTION_X[dir];
-        final int dy = Constants.DIRECTION_Y[dir];
-
-        while (true) {
-            Coordinate[] boxes = current.getBoxes();
-            Coordinate moved = boxes[movedIdx];
+    private void insertChild(State child, Map<Long, Long> bestCosts, Consumer<State> sink) {
+        bestCosts.put(child.getHash(), encodeCost(child));
+        sink.accept(child);
+    }
 
-            if (mapData[moved.y][moved.x] == Constants.GOAL) {
-                break;
-            }
-            if (!isCorridorCell(moved.x, moved.y, dir)) {
-                break;
+    private void evaluatePending(Map<Long, Long> bestCosts, Consumer<State> sink) {
+        int count = pendingChildren.size();
+        if (count == 0) {
+            return;
+        }
+        State[] evaluated = new State[count];
+        boolean[] learn = new boolean[count];
+        int chunks = Math.min(workers.length, count);
+        if (chunks == 1) {
+            evaluateRange(workers[0], 0, count, evaluated, learn, bestCosts);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>(chunks);
+            for (int w = 0; w < chunks; w++) {
+                ChildContext worker = workers[w];
+                int from = w * count / chunks;
+                int to = (w + 1) * count / chunks;
+                tasks.add(() -> {
+                    evaluateRange(worker, from, to, evaluated, learn, bestCosts);
+                    return null;
+                });
             }
-
-            int nextX = moved.x + dx;
-            int nextY = moved.y + dy;
-            if (!inBounds(nextX, nextY)) {
-                break;
+            try {
+                for (Future<Void> done : evalPool.invokeAll(tasks)) {
+                    done.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pendingChildren.clear();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
             }
-            if (mapData[nextY][nextX] == Constants.WALL) {
-                break;
+        }
+        for (ChildContext worker : workers) {
+            stats.accumulate(worker.stats);
+            worker.stats.reset(0L);
+        }
+        boolean learned = false;
+        for (int i = 0; i < count; i++) {
+            if (!learn[i] && evaluated[i] == null) {
+                continue;
             }
-            if (current.hasBoxAt(nextX, nextY)) {
-                break;
+            State child = pendingChildren.get(i);
+            if (learned && main.deadlock.matchesLearnedPattern(child.getBoxes(), child.getMovedBoxIndex())) {
+                if (evaluated[i] != null) {
+                    stats.recordPatternPruned();
+                }
+                continue;
             }
-
-            boolean strict = deadlockDetector.regionHasGoalForMove(boxes, movedIdx, nextX, nextY);
-            boolean loose = strict || deadlockDetector.regionHasGoalIgnoringBoxes(nextX, nextY);
-            if (!loose) {
-                stats.recordRegionPostPruned();
-                break;
+            if (learn[i]) {
+                main.learnPattern(child.getBoxes(), child.getMovedBoxIndex());
+                learned = true;
+            } else {
+                insertChild(evaluated[i], bestCosts, sink);
             }
+        }
+        pendingChildren.clear();
+    }
 
-            Coordinate[] nextBoxes = boxes.clone();
-            nextBoxes[movedIdx] = new Coordinate(nextX, nextY);
+    private void evaluateRange(ChildContext worker, int from, int to, State[] evaluated, boolean[] learn,
+                               Map<Long, Long> bestCosts) {
+        worker.signatures.clear();
+        for (int i = from; i < to; i++) {
+            evaluated[i] = worker.evaluate(pendingChildren.get(i), bestCosts);
+            learn[i] = worker.learnRequested;
+        }
+    }
 
-            Coordinate nextPlayer = new Coordinate(moved.x, moved.y);
-            current = State.push(
-                    current,
-                    nextPlayer,
-                    nextBoxes,
-                    Constants.MOVES[dir],
-                    current.getHeuristic(),
-                    EMPTY_PATH);
+    private State macroPush(State state, int boxIdx, int end, int dir, int run, char[] prePushWalk) {
+        Coordinate[] updatedBoxes = copyBoxes(state.getBoxes());
+        updatedBoxes[boxIdx] = new Coordinate(grid.x(end), grid.y(end));
+        int playerCell = end - grid.step[dir];
+        Coordinate nextPlayer = new Coordinate(grid.x(playerCell), grid.y(playerCell));
+        return State.macro(state,
+                nextPlayer,
+                updatedBoxes,
+                Constants.MOVES[dir],
+                run,
+                run,
+                state.getHeuristic(),
+                prePushWalk);
+    }
 
-            movedIdx = current.getMovedBoxIndex();
-            stats.recordCorridorSlide();
+    private State goalRoomMacro(State state, int boxIdx, int dir, int run, char[] prePushWalk, GoalRooms.Macro packing) {
+        char[] moves = packing.moves;
+        char[] walk = new char[prePushWalk.length + run + moves.length - 1];
+        System.arraycopy(prePushWalk, 0, walk, 0, prePushWalk.length);
+        Arrays.fill(walk, prePushWalk.length, prePushWalk.length + run, Constants.MOVES[dir]);
+        System.arraycopy(moves, 0, walk, prePushWalk.length + run, moves.length - 1);
+        Coordinate[] updatedBoxes = copyBoxes(state.getBoxes());
+        updatedBoxes[boxIdx] = new Coordinate(grid.x(packing.boxCell), grid.y(packing.boxCell));
+        Coordinate nextPlayer = new Coordinate(grid.x(packing.playerCell), grid.y(packing.playerCell));
+        stats.recordGoalMacro();
+        return State.macro(state,
+                nextPlayer,
+                updatedBoxes,
+                moves[moves.length - 1],
+                1,
+                run + packing.pushes,
+                state.getHeuristic(),
+                walk);
+    }
 
-            if (deadlockDetector.isDeadlock(current)) {
-                break;
-            }
+    private int slideAlongCorridor(Coordinate[] boxes, int movedIdx, int dest, int dir) {
+        int exit = Tunnels.exit(dest, dir);
+        int step = grid.step[dir];
+        int end = dest;
+        while (end != exit && !boxMarks.contains(end + step)) {
+            end += step;
         }
-        return current;
+        if (end != dest && !regionAllows(boxes, movedIdx, grid.x(end), grid.y(end))) {
+            stats.recordRegionPostPruned();
+            end -= step;
+        }
+        if (end != dest) {
+            stats.recordCorridorSlide(Math.abs(end - dest) / Math.abs(step));
+        }
+        return end;
     }
 
-    private boolean isCorridorCell(int x, int y, int dir) {
-        if (dir == Constants.LEFT || dir == Constants.RIGHT) {
-            return isWallOrOutOfBounds(x, y - 1) && isWallOrOutOfBounds(x, y + 1);
-        }
-        return isWallOrOutOfBounds(x - 1, y) && isWallOrOutOfBounds(x + 1, y);
+    private boolean regionAllows(Coordinate[] boxes, int movedIdx, int x, int y) {
+        return deadlockDetector.regionHasGoalForMove(boxes, movedIdx, x, y)
+                || deadlockDetector.regionHasGoalIgnoringBoxes(x, y);
     }
 
-    private char[] reconstructPath(int startX, int startY, int targetX, int targetY) {
-        if (startX == targetX && startY == targetY) {
+    private char[] reconstructPath(int start, int target) {
+        if (start == target) {
             return EMPTY_PATH;
         }
         int length = 0;
-        int cx = targetX;
-        int cy = targetY;
-        while (!(cx == startX && cy == startY)) {
+        for (int c = target; c != start; c = parentCell[c]) {
             length++;
-            int px = parentX[cy][cx];
-            int py = parentY[cy][cx];
-            cx = px;
-            cy = py;
         }
         char[] path = new char[length];
-        cx = targetX;
-        cy = targetY;
+        int c = target;
         for (int idx = length - 1; idx >= 0; idx--) {
-            char move = moveToHere[cy][cx];
-            path[idx] = move;
-            int px = parentX[cy][cx];
-            int py = parentY[cy][cx];
-            cx = px;
-            cy = py;
+            path[idx] = moveToHere[c];
+            c = parentCell[c];
         }
         return path;
     }
 
     private void resetWorkingArrays(State state) {
-        visitToken++;
-        if (visitToken == Integer.MAX_VALUE) {
-            for (int y = 0; y < rows; y++) {
-                java.util.Arrays.fill(visitStamp[y], 0);
-            }
-            visitToken = 1;
-        }
-        boxToken++;
-        if (boxToken == Integer.MAX_VALUE) {
-            for (int y = 0; y < rows; y++) {
-                java.util.Arrays.fill(boxStamp[y], 0);
-            }
-            boxToken = 1;
-        }
+        boxMarks.next();
+        Arrays.fill(boxBits, 0L);
         Coordinate[] boxes = state.getBoxes();
         for (int i = 0; i < boxes.length; i++) {
             Coordinate b = boxes[i];
-            if (inBounds(b.x, b.y)) {
-                boxStamp[b.y][b.x] = boxToken;
-                boxIds[b.y][b.x] = i;
+            if (grid.contains(b.x, b.y)) {
+                int cell = grid.cell(b.x, b.y);
+                boxMarks.mark(cell);
+                boxIds[cell] = i;
+                CellBits.set(boxBits, cell);
             }
         }
-    }
-
-    private void markVisited(int x, int y) {
-        visitStamp[y][x] = visitToken;
-    }
-
-    private boolean isVisited(int x, int y) {
-        return visitStamp[y][x] == visitToken;
-    }
-
-    private boolean hasBoxAt(int x, int y) {
-        return inBounds(x, y) && boxStamp[y][x] == boxToken;
+        for (int i = 0; i < freeBits.length; i++) {
+            freeBits[i] = grid.floorBits[i] & ~boxBits[i];
+        }
     }
 
     private boolean inBounds(int x, int y) {
-        return x >= 0 && x < cols && y >= 0 && y < rows;
-    }
-
-    private boolean isWallOrOutOfBounds(int x, int y) {
-        if (!inBounds(x, y)) {
-            return true;
-        }
-        return mapData[y][x] == Constants.WALL;
+        return grid.contains(x, y);
     }
 
     private Coordinate[] copyBoxes(Coordinate[] boxes) {
@@ -0,0 +1,250 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+public final class GoalRooms {
+    private static final int MAX_ROOM_CELLS = 96;
+
+    private static GridKernel grid;
+    private static int[] roomOf = new int[0];
+    private static int[] packIndex = new int[0];
+    private static int[][] packOrder = new int[0][];
+    private static final HashMap<Long, Macro> macros = new HashMap<>();
+
+    private GoalRooms() {}
+
+    static final class Macro {
+        final char[] moves;
+        final int pushes;
+        final int boxCell;
+        final int playerCell;
+
+        Macro(char[] moves, int pushes, int boxCell, int playerCell) {
+            this.moves = moves;
+            this.pushes = pushes;
+            this.boxCell = boxCell;
+            this.playerCell = playerCell;
+        }
+    }
+
+    public static synchronized void build(char[][] map, Coordinate[] goals) {
+        grid = GridKernel.of(map, goals);
+        macros.clear();
+        roomOf = new int[grid.size];
+        packIndex = new int[grid.size];
+        Arrays.fill(roomOf, -1);
+        Arrays.fill(packIndex, -1);
+        int roomCount = Rooms.goalsInRoom.length;
+        packOrder = new int[roomCount][];
+        int[] area = new int[roomCount];
+        for (int y = 0; y < grid.rows; y++) {
+            for (int x = 0; x < grid.cols; x++) {
+                int r = Rooms.roomId[y][x];
+                if (r >= 0) {
+                    roomOf[grid.cell(x, y)] = r;
+                    area[r]++;
+                }
+            }
+        }
+        for (int r = 0; r < roomCount; r++) {
+            if (Rooms.goalsInRoom[r] == 0 || Rooms.goalsInRoom[r] >= 64 || area[r] > MAX_ROOM_CELLS) {
+                continue;
+            }
+            List<Integer> entrances = entrancesOf(r);
+            if (entrances.isEmpty()) {
+                continue;
+            }
+            packOrder[r] = packingOrder(r, entrances);
+            for (int i = 0; i < packOrder[r].length; i++) {
+                packIndex[packOrder[r][i]] = i;
+            }
+            for (int entrance : entrances) {
+                for (int dir = 0; dir < grid.step.length; dir++) {
+                    int from = entrance - grid.step[dir];
+                    if (grid.wall[from] || roomOf[from] == r || grid.wall[from - grid.step[dir]]) {
+                        continue;
+                    }
+                    for (int k = 0; k < packOrder[r].length; k++) {
+                        Macro macro = solve(r, entrance, from, k);
+                        if (macro != null) {
+                            macros.put(key(entrance, dir, k), macro);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static Macro lookup(int entrance, int dir, Coordinate[] boxes, int movedIdx) {
+        if (grid == null || macros.isEmpty()) {
+            return null;
+        }
+        int r = roomOf[entrance];
+        if (r < 0 || packOrder[r] == null || roomOf[entrance - grid.step[dir]] == r) {
+            return null;
+        }
+        int filled = 0;
+        for (int i = 0; i < boxes.length; i++) {
+            if (i == movedIdx) {
+                continue;
+            }
+            int cell = grid.cell(boxes[i].x, boxes[i].y);
+            if (roomOf[cell] != r) {
+                continue;
+            }
+            if (packIndex[cell] < 0) {
+                return null;
+            }
+            filled++;
+        }
+        for (int i = 0; i < boxes.length; i++) {
+            if (i == movedIdx) {
+                continue;
+            }
+            int cell = grid.cell(boxes[i].x, boxes[i].y);
+            if (roomOf[cell] == r && packIndex[cell] >= filled) {
+                return null;
+            }
+        }
+        return macros.get(key(entrance, dir, filled));
+    }
+
+    static int size() {
+        return macros.size();
+    }
+
+    private static List<Integer> entrancesOf(int room) {
+        List<Integer> entrances = new ArrayList<>();
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (roomOf[cell] != room) {
+                continue;
+            }
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = cell + grid.step[dir];
+                if (!grid.wall[n] && roomOf[n] != room) {
+                    entrances.add(cell);
+                    break;
+                }
+            }
+        }
+        return entrances;
+    }
+
+    private static int[] packingOrder(int room, List<Integer> entrances) {
+        int[] distance = new int[grid.size];
+        Arrays.fill(distance, -1);
+        GridKernel.IntQueue queue = grid.newQueue();
+        for (int entrance : entrances) {
+            distance[entrance] = 0;
+            queue.add(entrance);
+        }
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = cell + grid.step[dir];
+                if (grid.wall[n] || roomOf[n] != room || distance[n] >= 0) {
+                    continue;
+                }
+                distance[n] = distance[cell] + 1;
+                queue.add(n);
+            }
+        }
+        List<Integer> goals = new ArrayList<>();
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (roomOf[cell] == room && grid.goal[cell]) {
+                goals.add(cell);
+            }
+        }
+        goals.sort((a, b) -> distance[a] != distance[b] ? Integer.compare(distance[b], distance[a]) : Integer.compare(a, b));
+        int[] order = new int[goals.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = goals.get(i);
+        }
+        return order;
+    }
+
+    private static Macro solve(int room, int entrance, int playerStart, int k) {
+        int target = packOrder[room][k];
+        if (target == entrance) {
+            return null;
+        }
+        int[] local = new int[grid.size];
+        Arrays.fill(local, -1);
+        int n = 0;
+        int[] cells = new int[MAX_ROOM_CELLS + 1];
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (roomOf[cell] == room && (packIndex[cell] < 0 || packIndex[cell] >= k)) {
+                local[cell] = n;
+                cells[n++] = cell;
+            }
+        }
+        local[playerStart] = n;
+        cells[n++] = playerStart;
+
+        int states = n * n;
+        int[] parent = new int[states];
+        char[] move = new char[states];
+        boolean[] push = new boolean[states];
+        Arrays.fill(parent, -2);
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        int start = local[entrance] * n + local[playerStart];
+        parent[start] = -1;
+        queue[tail++] = start;
+        while (head < tail) {
+            int state = queue[head++];
+            int box = cells[state / n];
+            int player = cells[state % n];
+            if (box == target) {
+                return rebuild(state, parent, move, push, cells, n);
+            }
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int next = player + grid.step[dir];
+                int nextBox = box;
+                if (next == box) {
+                    nextBox = box + grid.step[dir];
+                    if (nextBox == playerStart || local[nextBox] < 0) {
+                        continue;
+                    }
+                } else if (local[next] < 0) {
+                    continue;
+                }
+                int child = local[nextBox] * n + local[next];
+                if (parent[child] != -2) {
+                    continue;
+                }
+                parent[child] = state;
+                move[child] = Constants.MOVES[dir];
+                push[child] = next == box;
+                queue[tail++] = child;
+            }
+        }
+        return null;
+    }
+
+    private static Macro rebuild(int state, int[] parent, char[] move, boolean[] push, int[] cells, int n) {
+        int length = 0;
+        for (int s = state; parent[s] >= 0; s = parent[s]) {
+            length++;
+        }
+        char[] moves = new char[length];
+        int pushes = 0;
+        int s = state;
+        for (int i = length - 1; i >= 0; i--) {
+            moves[i] = move[s];
+            if (push[s]) {
+                pushes++;
+            }
+            s = parent[s];
+        }
+        return new Macro(moves, pushes, cells[state / n], cells[state % n]);
+    }
+
+    private static long key(int entrance, int dir, int k) {
+        return ((long) entrance * 4 + dir) * 64 + k;
+    }
+}
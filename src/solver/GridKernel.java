@@ -0,0 +1,196 @@
+package solver;
+
+import java.util.Arrays;
+
+final class GridKernel {
+    private static volatile GridKernel shared;
+
+    final int rows;
+    final int cols;
+    final int width;
+    final int height;
+    final int size;
+    final boolean[] wall;
+    final boolean[] goal;
+    final int[] step;
+    final long[] wallBits;
+    final long[] goalBits;
+    final long[] floorBits;
+
+    private final char[][] source;
+    private final Coordinate[] sourceGoals;
+    private final Coordinate[] goalsRef;
+
+    private GridKernel(char[][] mapData, Coordinate[] goals) {
+        this.source = mapData;
+        this.sourceGoals = goals == null ? new Coordinate[0] : goals.clone();
+        this.goalsRef = goals;
+        this.rows = mapData.length;
+        this.cols = rows == 0 ? 0 : mapData[0].length;
+        this.width = cols + 2;
+        this.height = rows + 2;
+        this.size = width * height;
+        this.wall = new boolean[size];
+        this.goal = new boolean[size];
+        Arrays.fill(wall, true);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                char cell = mapData[y][x];
+                wall[cell(x, y)] = cell == Constants.WALL;
+                if (cell == Constants.GOAL) {
+                    goal[cell(x, y)] = true;
+                }
+            }
+        }
+        for (Coordinate g : sourceGoals) {
+            if (g != null && g.x >= 0 && g.x < cols && g.y >= 0 && g.y < rows) {
+                goal[cell(g.x, g.y)] = true;
+            }
+        }
+        this.step = new int[Constants.DIRECTION_X.length];
+        for (int dir = 0; dir < step.length; dir++) {
+            step[dir] = Constants.DIRECTION_Y[dir] * width + Constants.DIRECTION_X[dir];
+        }
+        this.wallBits = CellBits.create(size);
+        this.goalBits = CellBits.create(size);
+        this.floorBits = CellBits.create(size);
+        for (int cell = 0; cell < size; cell++) {
+            CellBits.set(wall[cell] ? wallBits : floorBits, cell);
+            if (goal[cell]) {
+                CellBits.set(goalBits, cell);
+            }
+        }
+    }
+
+    static synchronized GridKernel of(char[][] mapData, Coordinate[] goals) {
+        GridKernel current = shared;
+        if (current != null && current.source == mapData && Arrays.equals(current.sourceGoals, goals)) {
+            return current;
+        }
+        current = new GridKernel(mapData, goals);
+        shared = current;
+        return current;
+    }
+
+    long[] boxBits(Coordinate[] boxes) {
+        long[] bits = CellBits.create(size);
+        for (Coordinate box : boxes) {
+            if (box == null || !contains(box.x, box.y)) {
+                return null;
+            }
+            CellBits.set(bits, cell(box.x, box.y));
+        }
+        return bits;
+    }
+
+    boolean hasBox(long[] boxBits, int x, int y) {
+        return contains(x, y) && CellBits.get(boxBits, cell(x, y));
+    }
+
+    boolean allOnGoals(long[] boxBits) {
+        for (int i = 0; i < boxBits.length; i++) {
+            if ((boxBits[i] & ~goalBits[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean hasGoals(Coordinate[] goals) {
+        return goals == goalsRef;
+    }
+
+    int cell(int x, int y) {
+        return (y + 1) * width + x + 1;
+    }
+
+    int x(int cell) {
+        return cell % width - 1;
+    }
+
+    int y(int cell) {
+        return cell / width - 1;
+    }
+
+    boolean contains(int x, int y) {
+        return x >= 0 && x < cols && y >= 0 && y < rows;
+    }
+
+    boolean isWall(int x, int y) {
+        return !contains(x, y) || wall[cell(x, y)];
+    }
+
+    Stamp newStamp() {
+        return new Stamp(size);
+    }
+
+    IntQueue newQueue() {
+        return new IntQueue(size);
+    }
+
+    static final class Stamp {
+        private final int[] marks;
+        private int token = 1;
+
+        Stamp(int size) {
+            this.marks = new int[Math.max(1, size)];
+        }
+
+        void next() {
+            token++;
+            if (token == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                token = 1;
+            }
+        }
+
+        void mark(int cell) {
+            marks[cell] = token;
+        }
+
+        boolean contains(int cell) {
+            return marks[cell] == token;
+        }
+
+        int token() {
+            return token;
+        }
+    }
+
+    static final class IntQueue {
+        private final int[] items;
+        private final int mask;
+        private int head;
+        private int tail;
+
+        IntQueue(int capacity) {
+            int length = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+            this.items = new int[length];
+            this.mask = length - 1;
+        }
+
+        void clear() {
+            head = 0;
+            tail = 0;
+        }
+
+        void add(int value) {
+            items[tail & mask] = value;
+            tail++;
+        }
+
+        int poll() {
+            int value = items[head & mask];
+            head++;
+            return value;
+        }
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        int size() {
+            return tail - head;
+        }
+    }
+}
@@ -10,25 +10,29 @@ public final class Heuristic {
     private static int rows;
     private static int cols;
     private static char[][] cachedMap = new char[0][0];
-    private static int[] dpCurrent = new int[0];
-    private static int[] dpNext = new int[0];
-    private static int dpLimit = 0;
-    private static int[][] reusableCost = new int[0][0];
-    private static int[] u = new int[0];
-    private static int[] v = new int[0];
-    private static int[] p = new int[0];
-    private static int[] way = new int[0];
-    private static int[] minv = new int[0];
-    private static boolean[] used = new boolean[0];
-    private static int[][] regionStamp = new int[0][0];
-    private static int regionToken = 1;
-    private static int[][] occupancyStamp = new int[0][0];
-    private static int occupancyToken = 1;
-    private static int[] regionQueueX = new int[0];
-    private static int[] regionQueueY = new int[0];
-    private static int[] bfsQueueX = new int[0];
-    private static int[] bfsQueueY = new int[0];
-    private static Deadlock deadlockHelper;
+    private static GridKernel grid;
+    private static GridKernel.IntQueue bfsQueue;
+    private static int[] bfsDistance = new int[0];
+    private static char[][] sourceMap;
+    private static ProblemReduction reduction;
+    private static volatile int generation;
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private static final class Workspace {
+        int generation = -1;
+        int[] dpCurrent = new int[0];
+        int[] dpNext = new int[0];
+        int dpLimit = 0;
+        int[][] reusableCost = new int[0][0];
+        int[] u = new int[0];
+        int[] v = new int[0];
+        int[] p = new int[0];
+        int[] way = new int[0];
+        int[] minv = new int[0];
+        boolean[] used = new boolean[0];
+        Coordinate[] activeBoxes = new Coordinate[0];
+        Deadlock deadlockHelper;
+    }
 
     private Heuristic() {}
 
@@ -39,26 +43,14 @@ public final class Heuristic {
             cachedMap = new char[0][0];
             minToAnyGoal = new int[0][0];
             rows = cols = 0;
-            dpCurrent = new int[0];
-            dpNext = new int[0];
-            dpLimit = 0;
-            reusableCost = new int[0][0];
-            u = new int[0];
-            v = new int[0];
-            p = new int[0];
-            way = new int[0];
-            minv = new int[0];
-            used = new boolean[0];
-            regionStamp = new int[0][0];
-            occupancyStamp = new int[0][0];
-            regionQueueX = new int[0];
-            regionQueueY = new int[0];
-            bfsQueueX = new int[0];
-            bfsQueueY = new int[0];
-            regionToken = 1;
-            occupancyToken = 1;
+            sourceMap = null;
+            reduction = null;
+            grid = null;
+            Tunnels.clear();
+            bfsQueue = null;
+            bfsDistance = new int[0];
             AssignCache.clear();
-            deadlockHelper = null;
+            generation++;
             return;
         }
 
@@ -69,8 +61,10 @@ public final class Heuristic {
         for (int y = 0; y < rows; y++) {
             System.arraycopy(mapData[y], 0, cachedMap[y], 0, cols);
         }
-        ensureRegionStructures(rows, cols);
-        ensureBfsCapacity(rows * cols);
+        grid = GridKernel.of(mapData, goals);
+        bfsQueue = grid.newQueue();
+        bfsDistance = new int[grid.size];
+        Tunnels.build(grid);
 
         cachedGoals = goals.clone();
         goalDistanceGrids = new int[cachedGoals.length][rows][cols];
@@ -79,19 +73,35 @@ public final class Heuristic {
             bfsFromGoal(g);
         }
         buildMinToAnyGoal();
-        ensureCostCapacity(cachedGoals.length);
-        ensureDpCapacity(cachedGoals.length);
-        deadlockHelper = new Deadlock(mapData, goals);
+        reduction = ProblemReduction.of(grid, cachedGoals);
+        sourceMap = mapData;
+        generation++;
+        workspace();
+    }
+
+    private static Workspace workspace() {
+        Workspace w = WORKSPACE.get();
+        if (w.generation != generation) {
+            w.generation = generation;
+            w.deadlockHelper = sourceMap == null ? null : new Deadlock(sourceMap, cachedGoals);
+            ensureCostCapacity(w, cachedGoals.length);
+            ensureDpCapacity(w, cachedGoals.length);
+        }
+        return w;
     }
 
     public static int evaluate(State state) {
         if (state == null) {
             return Integer.MAX_VALUE;
         }
-        return evaluate(state.getPlayer(), state.getBoxes());
+        return evaluate(state.getPlayer(), state.getBoxes(), state);
     }
 
     public static int evaluate(Coordinate player, Coordinate[] boxes) {
+        return evaluate(player, boxes, null);
+    }
+
+    private static int evaluate(Coordinate player, Coordinate[] boxes, State owner) {
         if (boxes.length == 0 || goalDistanceGrids.length == 0) {
             if (Diagnostics.ENABLED) {
                 Diagnostics.recordAssignmentValue(0);
@@ -112,7 +122,8 @@ public final class Heuristic {
         Arrays.sort(sortedBoxes);
         long evalStart = Diagnostics.now();
 
-        if (deadlockHelper != null && sortedBoxes.length > 5 && isStaticDeadlock(sortedBoxes)) {
+        Deadlock deadlockHelper = workspace().deadlockHelper;
+        if (deadlockHelper != null && sortedBoxes.length > 5 && isStaticDeadlock(deadlockHelper, sortedBoxes)) {
             if (Diagnostics.ENABLED) {
                 Diagnostics.recordAssignmentValue(Integer.MAX_VALUE);
                 Diagnostics.recordHeuristicEvaluation(true);
@@ -124,7 +135,8 @@ public final class Heuristic {
         final Coordinate[] key = sortedBoxes;
         final int bc = boxCount;
         final int gc = goalCount;
-        int assignment = AssignCache.getOrCompute(key, () -> assignmentLowerBound(key, bc, gc));
+        int assignment = AssignCache.getOrCompute(key,
+                () -> assignmentLowerBound(key, bc, gc, true, parkedGoals(owner, key)));
         boolean inf = assignment >= INF;
         if (Diagnostics.ENABLED) {
             int recordedValue = inf ? Integer.MAX_VALUE : assignment;
@@ -141,7 +153,25 @@ public final class Heuristic {
 
     public static int assignmentLBForBoxes(Coordinate[] boxesSorted) {
         return AssignCache.getOrCompute(boxesSorted,
-                () -> assignmentLowerBound(boxesSorted, boxesSorted.length, goalDistanceGrids.length));
+                () -> assignmentLowerBound(boxesSorted, boxesSorted.length, goalDistanceGrids.length, true,
+                        parkedGoals(null, boxesSorted)));
+    }
+
+    public static int pushLowerBound(State state) {
+        return pushLowerBound(state.getBoxes(), state);
+    }
+
+    private static int pushLowerBound(Coordinate[] boxesSorted, State owner) {
+        if (boxesSorted.length == 0) {
+            return 0;
+        }
+        if (goalDistanceGrids.length < boxesSorted.length) {
+            return Integer.MAX_VALUE;
+        }
+        int bound = AssignCache.getOrCompute(AssignCache.LINEAR, boxesSorted,
+                () -> assignmentLowerBound(boxesSorted, boxesSorted.length, goalDistanceGrids.length, false,
+                        parkedGoals(owner, boxesSorted)));
+        return bound >= INF ? Integer.MAX_VALUE : bound;
     }
 
     private static void fillWithInf(int[][] grid) {
@@ -155,35 +185,29 @@ public final class Heuristic {
         if (!inBounds(goal.x, goal.y)) {
             return;
         }
-        int[][] dist = goalDistanceGrids[goalIndex];
-        dist[goal.y][goal.x] = 0;
-        int head = 0;
-        int tail = 0;
-        bfsQueueX[tail] = goal.x;
-        bfsQueueY[tail] = goal.y;
-        tail++;
-        while (head < tail) {
-            int cx = bfsQueueX[head];
-            int cy = bfsQueueY[head];
-            head++;
-            int base = dist[cy][cx];
-            for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                int nx = cx + Constants.DIRECTION_X[dir];
-                int ny = cy + Constants.DIRECTION_Y[dir];
-                if (!inBounds(nx, ny)) {
+        int[] distance = bfsDistance;
+        Arrays.fill(distance, INF);
+        int start = grid.cell(goal.x, goal.y);
+        distance[start] = 0;
+        bfsQueue.clear();
+        bfsQueue.add(start);
+        while (!bfsQueue.isEmpty()) {
+            int cell = bfsQueue.poll();
+            int next = distance[cell] + 1;
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = cell + grid.step[dir];
+                if (grid.wall[n] || distance[n] <= next) {
                     continue;
                 }
-                if (cachedMap[ny][nx] == Constants.WALL) {
-                    continue;
-                }
-                if (dist[ny][nx] > base + 1) {
-                    dist[ny][nx] = base + 1;
-                    bfsQueueX[tail] = nx;
-                    bfsQueueY[tail] = ny;
-                    tail++;
-                }
+                distance[n] = next;
+                bfsQueue.add(n);
             }
         }
+        int[][] dist = goalDistanceGrids[goalIndex];
+        for (int y = 0; y < rows; y++) {
+            int rowBase = grid.cell(0, y);
+            System.arraycopy(distance, rowBase, dist[y], 0, cols);
+        }
     }
 
     private static void buildMinToAnyGoal() {
@@ -221,14 +245,6 @@ public final class Heuristic {
         return cachedMap[y][x] == Constants.WALL;
     }
 
-    private static boolean is1WideVertical(int x, int y) {
-        return isWallOrOutOfBounds(x - 1, y) && isWallOrOutOfBounds(x + 1, y);
-    }
-
-    private static boolean is1WideHorizontal(int x, int y) {
-        return isWallOrOutOfBounds(x, y - 1) && isWallOrOutOfBounds(x, y + 1);
-    }
-
     private static int estimatePlayerProximity(Coordinate player, Coordinate[] boxes) {
         if (player == null) {
             return 0;
@@ -243,7 +259,41 @@ public final class Heuristic {
         return best == INF ? 0 : best;
     }
 
-    private static int assignmentLowerBound(Coordinate[] boxes, int boxCount, int goalCount) {
+    private static long parkedGoals(State owner, Coordinate[] boxes) {
+        ProblemReduction r = reduction;
+        if (r == null) {
+            return 0L;
+        }
+        if (owner == null) {
+            return r.parkedGoals(boxes, 0L);
+        }
+        long parked = owner.getParkedGoals();
+        if (parked < 0L) {
+            State parent = owner.getParent();
+            long seed = parent == null ? 0L : Math.max(0L, parent.getParkedGoals());
+            parked = r.parkedGoals(boxes, seed);
+            owner.setParkedGoals(parked);
+        }
+        return parked;
+    }
+
+    private static int assignmentLowerBound(Coordinate[] boxes, int boxCount, int goalCount, boolean squared,
+                                            long parked) {
+        ProblemReduction r = reduction;
+        if (parked != 0L && r != null) {
+            Workspace w = workspace();
+            if (w.activeBoxes.length < boxCount) {
+                w.activeBoxes = new Coordinate[boxCount];
+            }
+            int[][][] distances = r.tablesFor(parked);
+            int active = r.activeBoxes(parked, boxes, boxCount, w.activeBoxes);
+            return assignmentLowerBound(distances, w.activeBoxes, active, distances.length, squared);
+        }
+        return assignmentLowerBound(goalDistanceGrids, boxes, boxCount, goalCount, squared);
+    }
+
+    private static int assignmentLowerBound(int[][][] distances, Coordinate[] boxes, int boxCount, int goalCount,
+                                            boolean squared) {
         long start = Diagnostics.now();
         if (boxCount == 0) {
             if (Diagnostics.ENABLED) {
@@ -263,15 +313,17 @@ public final class Heuristic {
             }
             return Integer.MAX_VALUE;
         }
+        Workspace w = workspace();
         if (goalCount <= 15) {
-            int value = assignWithBitmask(boxes, boxCount, goalCount);
+            int value = assignWithBitmask(w, distances, boxes, boxCount, goalCount, squared);
             if (Diagnostics.ENABLED) {
                 Diagnostics.recordAssignmentTime(System.nanoTime() - start);
             }
             return value;
         }
         int size = goalCount;
-        ensureCostCapacity(size);
+        ensureCostCapacity(w, size);
+        int[][] reusableCost = w.reusableCost;
         for (int i = 0; i < size; i++) {
             Arrays.fill(reusableCost[i], 0, size, 0);
         }
@@ -283,9 +335,9 @@ public final class Heuristic {
             Arrays.fill(reusableCost[b], 0, size, INF);
             boolean reachable = false;
             for (int g = 0; g < goalCount; g++) {
-                int dist = goalDistanceGrids[g][box.y][box.x];
+                int dist = distances[g][box.y][box.x];
                 if (dist < INF) {
-                    int cost = dist * dist;
+                    int cost = squared ? dist * dist : dist;
                     reusableCost[b][g] = cost;
                     reachable = true;
                 }
@@ -297,13 +349,53 @@ public final class Heuristic {
                 return Integer.MAX_VALUE;
             }
         }
-        int result = hungarian(reusableCost, size);
+        int result = hungarian(w, reusableCost, size);
         if (Diagnostics.ENABLED) {
             Diagnostics.recordAssignmentTime(System.nanoTime() - start);
         }
         return result;
     }
 
+    public static int[] assignment(Coordinate[] boxesSorted) {
+        int goalCount = goalDistanceGrids.length;
+        int[] assigned = new int[boxesSorted.length];
+        Arrays.fill(assigned, -1);
+        if (boxesSorted.length == 0 || boxesSorted.length > goalCount) {
+            return assigned;
+        }
+        Workspace w = workspace();
+        ensureCostCapacity(w, goalCount);
+        int[][] reusableCost = w.reusableCost;
+        for (int b = 0; b < goalCount; b++) {
+            Arrays.fill(reusableCost[b], 0, goalCount, 0);
+        }
+        for (int b = 0; b < boxesSorted.length; b++) {
+            Coordinate box = boxesSorted[b];
+            for (int g = 0; g < goalCount; g++) {
+                reusableCost[b][g] = inBounds(box.x, box.y) ? goalDistanceGrids[g][box.y][box.x] : INF;
+            }
+        }
+        hungarian(w, reusableCost, goalCount);
+        for (int j = 1; j <= goalCount; j++) {
+            int b = w.p[j] - 1;
+            if (b >= 0 && b < assigned.length) {
+                assigned[b] = j - 1;
+            }
+        }
+        return assigned;
+    }
+
+    static int assignmentCost(int[][] cost, int n) {
+        return hungarian(workspace(), cost, n);
+    }
+
+    public static int goalDistance(int goalIndex, int x, int y) {
+        if (goalIndex < 0 || goalIndex >= goalDistanceGrids.length || !inBounds(x, y)) {
+            return INF;
+        }
+        return goalDistanceGrids[goalIndex][y][x];
+    }
+
     public static int lastPushProgress(State state) {
         if (state == null) {
             return 0;
@@ -311,13 +403,14 @@ public final class Heuristic {
         return computeDistanceDelta(state);
     }
 
-    private static int assignWithBitmask(Coordinate[] boxes, int boxCount, int goalCount) {
-        ensureDpCapacity(goalCount);
-        int limit = dpLimit;
-        Arrays.fill(dpCurrent, 0, limit, INF);
-        dpCurrent[0] = 0;
-        int[] current = dpCurrent;
-        int[] next = dpNext;
+    private static int assignWithBitmask(Workspace w, int[][][] distances, Coordinate[] boxes, int boxCount, int goalCount,
+                                         boolean squared) {
+        ensureDpCapacity(w, goalCount);
+        int limit = w.dpLimit;
+        int[] current = w.dpCurrent;
+        int[] next = w.dpNext;
+        Arrays.fill(current, 0, limit, INF);
+        current[0] = 0;
         for (int b = 0; b < boxCount; b++) {
             Arrays.fill(next, 0, limit, INF);
             Coordinate box = boxes[b];
@@ -334,13 +427,13 @@ public final class Heuristic {
                     if ((mask & (1 << g)) != 0) {
                         continue;
                     }
-                    int dist = goalDistanceGrids[g][box.y][box.x];
+                    int dist = distances[g][box.y][box.x];
                     if (dist >= INF) {
                         continue;
                     }
                     reachable = true;
                     int nextMask = mask | (1 << g);
-                    int cost = dist * dist;
+                    int cost = squared ? dist * dist : dist;
                     int candidate = base + cost;
                     if (candidate < next[nextMask]) {
                         next[nextMask] = candidate;
@@ -367,81 +460,43 @@ public final class Heuristic {
         return best;
     }
 
-    private static void ensureCostCapacity(int size) {
+    private static void ensureCostCapacity(Workspace w, int size) {
         if (size <= 0) {
-            reusableCost = new int[0][0];
-            ensureHungarianCapacity(0);
+            w.reusableCost = new int[0][0];
+            ensureHungarianCapacity(w, 0);
             return;
         }
-        if (reusableCost.length < size || reusableCost[0].length < size) {
-            reusableCost = new int[size][size];
+        if (w.reusableCost.length < size || w.reusableCost[0].length < size) {
+            w.reusableCost = new int[size][size];
         }
-        ensureHungarianCapacity(size);
+        ensureHungarianCapacity(w, size);
     }
 
-    private static void ensureHungarianCapacity(int size) {
+    private static void ensureHungarianCapacity(Workspace w, int size) {
         int length = size + 1;
-        if (u.length < length) {
-            u = new int[length];
-            v = new int[length];
-            p = new int[length];
-            way = new int[length];
-            minv = new int[length];
-            used = new boolean[length];
+        if (w.u.length < length) {
+            w.u = new int[length];
+            w.v = new int[length];
+            w.p = new int[length];
+            w.way = new int[length];
+            w.minv = new int[length];
+            w.used = new boolean[length];
         }
     }
 
-    private static void ensureDpCapacity(int goalCount) {
+    private static void ensureDpCapacity(Workspace w, int goalCount) {
         if (goalCount < 0 || goalCount > 20) {
             goalCount = Math.min(Math.max(goalCount, 0), 20);
         }
         int limit = goalCount == 0 ? 1 : 1 << goalCount;
-        if (dpCurrent.length < limit) {
-            dpCurrent = new int[limit];
-            dpNext = new int[limit];
-        }
-        dpLimit = limit;
-    }
-
-    private static void ensureRegionStructures(int r, int c) {
-        if (r <= 0 || c <= 0) {
-            regionStamp = new int[0][0];
-            occupancyStamp = new int[0][0];
-            regionQueueX = new int[0];
-            regionQueueY = new int[0];
-            ensureBfsCapacity(0);
-            regionToken = 1;
-            occupancyToken = 1;
-            return;
-        }
-        if (regionStamp.length != r || regionStamp[0].length != c) {
-            regionStamp = new int[r][c];
-            regionToken = 1;
-        }
-        if (occupancyStamp.length != r || occupancyStamp[0].length != c) {
-            occupancyStamp = new int[r][c];
-            occupancyToken = 1;
-        }
-        int capacity = r * c;
-        if (regionQueueX.length < capacity) {
-            regionQueueX = new int[capacity];
-            regionQueueY = new int[capacity];
+        if (w.dpCurrent.length < limit) {
+            w.dpCurrent = new int[limit];
+            w.dpNext = new int[limit];
         }
+        w.dpLimit = limit;
     }
 
-    private static void ensureBfsCapacity(int capacity) {
-        if (capacity <= 0) {
-            bfsQueueX = new int[0];
-            bfsQueueY = new int[0];
-            return;
-        }
-        if (bfsQueueX.length < capacity) {
-            bfsQueueX = new int[capacity];
-            bfsQueueY = new int[capacity];
-        }
-    }
-
-    private static boolean isStaticDeadlock(Coordinate[] boxes) {
+    private static boolean isStaticDeadlock(Deadlock deadlockHelper, Coordinate[] boxes) {
         if (deadlockHelper == null || boxes == null) {
             return false;
         }
@@ -515,81 +570,8 @@ public final class Heuristic {
         return count;
     }
 
-        public static int corridorEntrancePenalty(Coordinate[] boxes) {
-        int penalty = 0;
-        for (Coordinate box : boxes) {
-            if (box == null) {
-                continue;
-            }
-            int x = box.x;
-            int y = box.y;
-            boolean vertical = is1WideVertical(x, y);
-            boolean horizontal = !vertical && is1WideHorizontal(x, y);
-            if (!vertical && !horizontal) {
-                continue;
-            }
-            int dirX = 0;
-            int dirY = 0;
-            if (vertical) {
-                int upExit = corridorExitDistance(x, y, 0, -1, true);
-                int downExit = corridorExitDistance(x, y, 0, 1, true);
-                dirY = (upExit <= downExit) ? -1 : 1;
-            } else {
-                int leftExit = corridorExitDistance(x, y, -1, 0, false);
-                int rightExit = corridorExitDistance(x, y, 1, 0, false);
-                dirX = (leftExit <= rightExit) ? -1 : 1;
-            }
-            if (emptyGoalBeforeBoxOnLine(boxes, x, y, dirX, dirY)) {
-                penalty++;
-            }
-        }
-        return penalty;
-    }
-
-    private static int corridorExitDistance(int startX, int startY, int dx, int dy, boolean vertical) {
-        int distance = 0;
-        int x = startX + dx;
-        int y = startY + dy;
-        while (inBounds(x, y) && cachedMap[y][x] != Constants.WALL) {
-            boolean stillNarrow = vertical ? is1WideVertical(x, y) : is1WideHorizontal(x, y);
-            if (!stillNarrow) {
-                break;
-            }
-            distance++;
-            x += dx;
-            y += dy;
-        }
-        return distance;
-    }
-
-    private static boolean emptyGoalBeforeBoxOnLine(Coordinate[] boxes, int startX, int startY, int dx, int dy) {
-        int x = startX + dx;
-        int y = startY + dy;
-        while (inBounds(x, y) && cachedMap[y][x] != Constants.WALL) {
-            boolean vertical = dx == 0;
-            boolean stillNarrow = vertical ? is1WideVertical(x, y) : is1WideHorizontal(x, y);
-            if (!stillNarrow) {
-                return false;
-            }
-            if (hasBoxAt(boxes, x, y)) {
-                return false;
-            }
-            if (minToAnyGoal[y][x] == 0) {
-                return true;
-            }
-            x += dx;
-            y += dy;
-        }
-        return false;
-    }
-
-private static boolean hasBoxAt(Coordinate[] boxes, int x, int y) {
-        for (Coordinate box : boxes) {
-            if (box != null && box.x == x && box.y == y) {
-                return true;
-            }
-        }
-        return false;
+    public static int corridorEntrancePenalty(Coordinate[] boxes) {
+        return Tunnels.corridorPenalty(boxes);
     }
 
     private static Coordinate findPreviousLocation(State state) {
@@ -614,88 +596,14 @@ private static boolean hasBoxAt(Coordinate[] boxes, int x, int y) {
         return null;
     }
 
-    private static void markOccupancy(Coordinate[] boxes, int skipIdx) {
-        if (rows <= 0 || cols <= 0) {
-            return;
-        }
-        advanceOccupancyToken();
-        for (int i = 0; i < boxes.length; i++) {
-            if (i == skipIdx) {
-                continue;
-            }
-            Coordinate other = boxes[i];
-            if (other == null) {
-                continue;
-            }
-            if (!inBounds(other.x, other.y)) {
-                continue;
-            }
-            occupancyStamp[other.y][other.x] = occupancyToken;
-        }
-    }
-
-    private static int floodRegionFrom(Coordinate start) {
-        if (!inBounds(start.x, start.y)) {
-            return 0;
-        }
-        advanceRegionToken();
-        int token = regionToken;
-        int head = 0;
-        int tail = 0;
-        regionStamp[start.y][start.x] = token;
-        regionQueueX[tail] = start.x;
-        regionQueueY[tail] = start.y;
-        tail++;
-        while (head < tail) {
-            int cx = regionQueueX[head];
-            int cy = regionQueueY[head];
-            head++;
-            for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                int nx = cx + Constants.DIRECTION_X[dir];
-                int ny = cy + Constants.DIRECTION_Y[dir];
-                if (!inBounds(nx, ny)) {
-                    continue;
-                }
-                if (regionStamp[ny][nx] == token) {
-                    continue;
-                }
-                if (cachedMap[ny][nx] == Constants.WALL) {
-                    continue;
-                }
-                if (occupancyStamp[ny][nx] == occupancyToken) {
-                    continue;
-                }
-                regionStamp[ny][nx] = token;
-                regionQueueX[tail] = nx;
-                regionQueueY[tail] = ny;
-                tail++;
-            }
-        }
-        return token;
-    }
-
-    private static void advanceRegionToken() {
-        regionToken++;
-        if (regionToken == Integer.MAX_VALUE) {
-            for (int y = 0; y < regionStamp.length; y++) {
-                Arrays.fill(regionStamp[y], 0);
-            }
-            regionToken = 1;
-        }
-    }
-
-    private static void advanceOccupancyToken() {
-        occupancyToken++;
-        if (occupancyToken == Integer.MAX_VALUE) {
-            for (int y = 0; y < occupancyStamp.length; y++) {
-                Arrays.fill(occupancyStamp[y], 0);
-            }
-            occupancyToken = 1;
-        }
-    }
-
-    private static int hungarian(int[][] cost, int n) {
-        ensureHungarianCapacity(n);
+    private static int hungarian(Workspace w, int[][] cost, int n) {
+        ensureHungarianCapacity(w, n);
+        int[] u = w.u;
+        int[] v = w.v;
+        int[] p = w.p;
+        int[] way = w.way;
+        int[] minv = w.minv;
+        boolean[] used = w.used;
         for (int i = 0; i <= n; i++) {
             u[i] = 0;
             v[i] = 0;
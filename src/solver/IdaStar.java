@@ -0,0 +1,189 @@
+package solver;
+
+import java.util.List;
+
+public final class IdaStar implements SearchEngine {
+    public static int TABLE_MEGABYTES = 32;
+
+    private static final int FOUND = -1;
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int ENTRY_BYTES = 20;
+
+    private final Coordinate[] goalCoordinates;
+    private final char[][] mapData;
+    private final Deadlock deadlockDetector;
+    private final SearchStats stats = new SearchStats();
+    private final long timeBudgetNanos;
+
+    private final PushExpander expander;
+
+    private final long[] tableKeys;
+    private final int[] tableBound;
+    private final short[] tableG;
+    private final short[] tableRemaining;
+    private final int[] tableIteration;
+    private final int tableMask;
+
+    private int iteration;
+    private long deadline;
+    private boolean aborted;
+    private State solution;
+
+    public IdaStar(char[][] mapData, Coordinate[] goalCoordinates, long timeBudgetMillis) {
+        this.mapData = mapData;
+        this.goalCoordinates = goalCoordinates;
+        this.deadlockDetector = new Deadlock(mapData, goalCoordinates);
+        this.timeBudgetNanos = Math.max(1L, timeBudgetMillis) * 1_000_000L;
+        this.expander = new PushExpander(mapData, goalCoordinates, deadlockDetector, stats);
+        long budget = Math.max(1L, TABLE_MEGABYTES) * 1024L * 1024L / ENTRY_BYTES;
+        int entries = Integer.highestOneBit((int) Math.min(1 << 26, budget));
+        this.tableKeys = new long[entries];
+        this.tableBound = new int[entries];
+        this.tableG = new short[entries];
+        this.tableRemaining = new short[entries];
+        this.tableIteration = new int[entries];
+        this.tableMask = entries - 1;
+    }
+
+    @Override
+    public SearchOutcome search(State initial) {
+        long start = System.nanoTime();
+        deadline = start + timeBudgetNanos;
+        stats.reset(timeBudgetNanos);
+        stats.markStart(start);
+        Diagnostics.markSearchStart();
+        aborted = false;
+        solution = null;
+
+        int threshold = Heuristic.pushLowerBound(initial);
+        State root = initial.withHeuristic(threshold);
+        while (threshold != INF && !aborted) {
+            iteration++;
+            stats.recordIdaIteration();
+            int next = dfs(root, threshold);
+            if (next == FOUND) {
+                break;
+            }
+            threshold = next;
+        }
+
+        long finish = System.nanoTime();
+        if (solution != null) {
+            String plan = solution.reconstructPlan();
+            ReplayValidator.ValidationResult validation = ReplayValidator.validate(mapData, expander.itemsFor(initial), plan);
+            boolean solved = validation != null && validation.fullyValid && validation.solved;
+            stats.recordFirstIncumbent(finish);
+            stats.setSuboptimalityBound(1.0);
+            stats.markFinish(finish, false, solution.getDepth(), solution.getPushes(), 0L);
+            Diagnostics.setSummary(stats.toSummaryString());
+            Diagnostics.markSearchFinish(solved, false);
+            return new SearchOutcome(solved ? plan : "", solved, solved ? plan : null, 1.0);
+        }
+        stats.markFinish(finish, aborted, 0, 0, 0L);
+        Diagnostics.setSummary(stats.toSummaryString());
+        Diagnostics.markSearchFinish(false, aborted);
+        return new SearchOutcome("", false, null);
+    }
+
+    @Override
+    public SearchStats getStatistics() {
+        return stats.snapshot();
+    }
+
+    private int dfs(State state, int threshold) {
+        int g = state.getPushes();
+        int h = state.getHeuristic();
+        if (g + h > threshold) {
+            return g + h;
+        }
+        if (state.isGoal(goalCoordinates)) {
+            solution = state;
+            return FOUND;
+        }
+        if (System.nanoTime() > deadline) {
+            aborted = true;
+            return INF;
+        }
+
+        long key = PushExpander.key(state.getBoxes(), expander.flood(state));
+        int slot = (int) (key ^ (key >>> 32)) & tableMask;
+        if (tableKeys[slot] == key) {
+            if (tableIteration[slot] == iteration && tableG[slot] <= g) {
+                stats.recordTranspositionHit();
+                return INF;
+            }
+            if (g + tableBound[slot] > threshold) {
+                stats.recordTranspositionHit();
+                return g + tableBound[slot];
+            }
+            h = Math.max(h, tableBound[slot]);
+        }
+        store(slot, key, g, h, threshold - g);
+
+        stats.incrementExpanded();
+        List<State> children = expander.expand(state);
+        children.sort((a, b) -> compareChildren(state, a, b));
+
+        int best = INF;
+        boolean complete = true;
+        for (State child : children) {
+            int result = dfs(child, threshold);
+            if (result == FOUND) {
+                return FOUND;
+            }
+            if (aborted) {
+                return INF;
+            }
+            if (result == INF) {
+                complete = false;
+            }
+            best = Math.min(best, result);
+        }
+        if (complete && best != INF && tableKeys[slot] == key) {
+            tableBound[slot] = Math.max(tableBound[slot], best - g);
+        }
+        return best;
+    }
+
+    private void store(int slot, long key, int g, int h, int remaining) {
+        if (tableKeys[slot] != key && tableKeys[slot] != 0L
+                && tableIteration[slot] == iteration && tableRemaining[slot] > remaining) {
+            return;
+        }
+        if (tableKeys[slot] != key) {
+            tableBound[slot] = h;
+        } else {
+            tableBound[slot] = Math.max(tableBound[slot], h);
+        }
+        tableKeys[slot] = key;
+        tableG[slot] = (short) Math.min(Short.MAX_VALUE, g);
+        tableRemaining[slot] = (short) Math.min(Short.MAX_VALUE, remaining);
+        tableIteration[slot] = iteration;
+    }
+
+    private int compareChildren(State parent, State a, State b) {
+        int cmp = Integer.compare(a.getPushes() + a.getHeuristic(), b.getPushes() + b.getHeuristic());
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Boolean.compare(!continuesLastBox(parent, a), !continuesLastBox(parent, b));
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = Integer.compare(b.getBoxesOnGoals(), a.getBoxesOnGoals());
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Long.compare(a.getInsertionId(), b.getInsertionId());
+    }
+
+    private boolean continuesLastBox(State parent, State child) {
+        int moved = parent.getMovedBoxIndex();
+        if (moved < 0) {
+            return false;
+        }
+        Coordinate last = parent.getBoxes()[moved];
+        Coordinate next = child.getPlayer();
+        return last.x == next.x && last.y == next.y;
+    }
+}
@@ -0,0 +1,238 @@
+package solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+
+public final class LocalPatternTable {
+    public static final String RESOURCE = "local_deadlocks.bin";
+
+    static final int FLOOR = 0;
+    static final int WALL = 1;
+    static final int BOX = 2;
+    static final int NEIGHBOURS = 8;
+    static final int ENTRIES = 6561;
+    static final int[] NEIGHBOUR_DX = {-1, 0, 1, -1, 1, -1, 0, 1};
+    static final int[] NEIGHBOUR_DY = {-1, -1, -1, 0, 0, 1, 1, 1};
+
+    private static final int MAGIC = 0x534b4c50;
+    private static final int SIDE = 5;
+    private static final int AREA = SIDE * SIDE;
+    private static final int CENTER = 2 * SIDE + 2;
+    private static final int[] STEP = {-SIDE, SIDE, -1, 1};
+
+    private static volatile long[] table;
+
+    private LocalPatternTable() {}
+
+    public static void main(String[] args) throws IOException {
+        String target = args.length > 0 ? args[0] : "src/solver/" + RESOURCE;
+        long start = System.nanoTime();
+        long[] bits = generate();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(ENTRIES);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+        int dead = 0;
+        for (long word : bits) {
+            dead += Long.bitCount(word);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000L;
+        System.out.println("wrote " + target + " entries=" + ENTRIES + " deadlocked=" + dead + " time=" + elapsedMs + "ms");
+    }
+
+    static void ensureLoaded() {
+        if (table == null) {
+            load();
+        }
+    }
+
+    static boolean isDeadlocked(int index) {
+        long[] bits = table;
+        if (bits == null) {
+            bits = load();
+        }
+        return (bits[index >>> 6] & (1L << (index & 63))) != 0L;
+    }
+
+    private static synchronized long[] load() {
+        if (table != null) {
+            return table;
+        }
+        long[] bits = null;
+        InputStream resource = LocalPatternTable.class.getResourceAsStream(RESOURCE);
+        if (resource != null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(resource))) {
+                if (in.readInt() == MAGIC && in.readInt() == ENTRIES) {
+                    long[] read = new long[(ENTRIES + 63) >>> 6];
+                    for (int i = 0; i < read.length; i++) {
+                        read[i] = in.readLong();
+                    }
+                    bits = read;
+                }
+            } catch (IOException ignore) {
+                bits = null;
+            }
+        }
+        if (bits == null) {
+            bits = generate();
+        }
+        table = bits;
+        return bits;
+    }
+
+    static long[] generate() {
+        long[] bits = new long[(ENTRIES + 63) >>> 6];
+        int[] cells = new int[NEIGHBOURS];
+        for (int index = 0; index < ENTRIES; index++) {
+            int rest = index;
+            for (int i = 0; i < NEIGHBOURS; i++) {
+                cells[i] = rest % 3;
+                rest /= 3;
+            }
+            if (!canClearWindow(cells)) {
+                bits[index >>> 6] |= 1L << (index & 63);
+            }
+        }
+        return bits;
+    }
+
+    private static boolean canClearWindow(int[] cells) {
+        boolean[] wall = new boolean[AREA];
+        int boxes = 1 << CENTER;
+        for (int i = 0; i < NEIGHBOURS; i++) {
+            int cell = CENTER + NEIGHBOUR_DY[i] * SIDE + NEIGHBOUR_DX[i];
+            if (cells[i] == WALL) {
+                wall[cell] = true;
+            } else if (cells[i] == BOX) {
+                boxes |= 1 << cell;
+            }
+        }
+        int[] region = new int[AREA];
+        int[] queue = new int[AREA];
+        boolean[] seeded = new boolean[AREA];
+        for (int start = 0; start < AREA; start++) {
+            if (wall[start] || (boxes & (1 << start)) != 0 || seeded[start]) {
+                continue;
+            }
+            int count = flood(wall, boxes, start, region, queue);
+            for (int i = 0; i < count; i++) {
+                seeded[queue[i]] = true;
+            }
+            if (clears(wall, boxes, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean clears(boolean[] wall, int startBoxes, int startPlayer) {
+        int[] region = new int[AREA];
+        int[] queue = new int[AREA];
+        int[] reachable = new int[AREA];
+        HashSet<Long> visited = new HashSet<>();
+        ArrayDeque<long[]> stack = new ArrayDeque<>();
+        stack.push(new long[] {startBoxes, startPlayer});
+        visited.add(key(startBoxes, normalise(wall, startBoxes, startPlayer, region, queue)));
+        while (!stack.isEmpty()) {
+            long[] node = stack.pop();
+            int boxes = (int) node[0];
+            int player = (int) node[1];
+            int count = flood(wall, boxes, player, region, queue);
+            System.arraycopy(queue, 0, reachable, 0, count);
+            for (int i = 0; i < count; i++) {
+                int p = reachable[i];
+                for (int dir = 0; dir < STEP.length; dir++) {
+                    int box = p + STEP[dir];
+                    if (!inside(p, dir) || (boxes & (1 << box)) == 0) {
+                        continue;
+                    }
+                    int dest = box + STEP[dir];
+                    if (!inside(box, dir) || wall[dest] || (boxes & (1 << dest)) != 0) {
+                        continue;
+                    }
+                    int next = boxes & ~(1 << box);
+                    if (!isRing(dest)) {
+                        next |= 1 << dest;
+                    }
+                    if (next == 0) {
+                        return true;
+                    }
+                    long k = key(next, normalise(wall, next, box, region, queue));
+                    if (visited.add(k)) {
+                        stack.push(new long[] {next, box});
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int normalise(boolean[] wall, int boxes, int player, int[] region, int[] queue) {
+        int count = flood(wall, boxes, player, region, queue);
+        int min = player;
+        for (int i = 0; i < count; i++) {
+            if (queue[i] < min) {
+                min = queue[i];
+            }
+        }
+        return min;
+    }
+
+    private static int flood(boolean[] wall, int boxes, int start, int[] region, int[] queue) {
+        java.util.Arrays.fill(region, 0);
+        int head = 0;
+        int tail = 0;
+        region[start] = 1;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int dir = 0; dir < STEP.length; dir++) {
+                if (!inside(cell, dir)) {
+                    continue;
+                }
+                int next = cell + STEP[dir];
+                if (region[next] != 0 || wall[next] || (boxes & (1 << next)) != 0) {
+                    continue;
+                }
+                region[next] = 1;
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+
+    private static boolean inside(int cell, int dir) {
+        int x = cell % SIDE;
+        int y = cell / SIDE;
+        switch (dir) {
+            case Constants.UP:
+                return y > 0;
+            case Constants.DOWN:
+                return y < SIDE - 1;
+            case Constants.LEFT:
+                return x > 0;
+            default:
+                return x < SIDE - 1;
+        }
+    }
+
+    private static boolean isRing(int cell) {
+        int x = cell % SIDE;
+        int y = cell / SIDE;
+        return x == 0 || y == 0 || x == SIDE - 1 || y == SIDE - 1;
+    }
+
+    private static long key(int boxes, int player) {
+        return ((long) boxes << 5) | player;
+    }
+}
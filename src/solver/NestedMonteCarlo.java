@@ -0,0 +1,433 @@
+package solver;
+
+import java.util.Arrays;
+
+public final class NestedMonteCarlo implements SearchEngine {
+    public static int LEVEL = 2;
+    public static int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final int INF = 1_000_000;
+    private static final int MAX_DEPTH = 512;
+    private static final int SOLVED = 1 << 24;
+    private static final int PLACED = 1024;
+
+    private final char[][] mapData;
+    private final GridKernel grid;
+    private final int[] distance;
+    private final boolean[] goalFree;
+    private final int[] neighbour = new int[LocalPatternTable.NEIGHBOURS];
+    private final SearchStats stats = new SearchStats();
+    private final long timeBudgetNanos;
+
+    private volatile long deadline;
+    private volatile boolean stop;
+    private int[] solution;
+
+    public NestedMonteCarlo(char[][] mapData, Coordinate[] goalCoordinates, long timeBudgetMillis) {
+        this.mapData = mapData;
+        this.grid = GridKernel.of(mapData, goalCoordinates);
+        this.timeBudgetNanos = Math.max(1L, timeBudgetMillis) * 1_000_000L;
+        this.distance = new int[grid.size];
+        this.goalFree = new boolean[grid.size];
+        for (int i = 0; i < neighbour.length; i++) {
+            neighbour[i] = LocalPatternTable.NEIGHBOUR_DY[i] * grid.width + LocalPatternTable.NEIGHBOUR_DX[i];
+        }
+        boolean[] live = SmallSolver.liveCells(grid, goalCoordinates);
+        for (int cell = 0; cell < grid.size; cell++) {
+            int x = grid.x(cell);
+            int y = grid.y(cell);
+            distance[cell] = live[cell] && grid.contains(x, y) ? Heuristic.nearestGoalDistance(x, y) : INF;
+            boolean free = !grid.wall[cell] && !grid.goal[cell];
+            for (int i = 0; i < neighbour.length && free; i++) {
+                int n = cell + neighbour[i];
+                free = n < 0 || n >= grid.size || !grid.goal[n];
+            }
+            goalFree[cell] = free;
+        }
+    }
+
+    @Override
+    public SearchOutcome search(State initial) {
+        long start = System.nanoTime();
+        deadline = start + timeBudgetNanos;
+        stats.reset(timeBudgetNanos);
+        stats.markStart(start);
+        Diagnostics.markSearchStart();
+        LocalPatternTable.ensureLoaded();
+        stop = false;
+        solution = null;
+
+        Worker[] workers = new Worker[Math.max(1, THREADS)];
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(initial, start * 0x9E3779B97F4A7C15L + i + 1);
+            threads[i] = new Thread(workers[i], "nmcs-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        Worker best = workers[0];
+        long playouts = 0L;
+        for (int i = 0; i < threads.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                stop = true;
+                Thread.currentThread().interrupt();
+            }
+            playouts += workers[i].playouts;
+            if (workers[i].partialScore > best.partialScore) {
+                best = workers[i];
+            }
+        }
+        stats.recordPlayouts(playouts);
+
+        long finish = System.nanoTime();
+        int[] pushes = solution;
+        boolean found = pushes != null;
+        if (!found) {
+            pushes = Arrays.copyOf(best.partial, best.partialLength);
+        }
+        String plan = toPlan(initial, pushes);
+        ReplayValidator.ValidationResult validation = ReplayValidator.validate(mapData, itemsFor(initial), plan);
+        boolean solved = found && validation.fullyValid && validation.solved;
+        if (solved) {
+            stats.recordFirstIncumbent(finish);
+        }
+        stats.markFinish(finish, !solved, plan.length(), pushes.length, 0L);
+        Diagnostics.setSummary(stats.toSummaryString());
+        Diagnostics.markSearchFinish(solved, !solved);
+        return new SearchOutcome(plan, solved, solved ? plan : null);
+    }
+
+    @Override
+    public SearchStats getStatistics() {
+        return stats.snapshot();
+    }
+
+    private synchronized void found(int[] applied, int length) {
+        if (solution == null || length < solution.length) {
+            solution = Arrays.copyOf(applied, length);
+        }
+        stop = true;
+    }
+
+    private String toPlan(State initial, int[] pushes) {
+        Coordinate[] start = initial.getBoxes();
+        int[] boxes = new int[start.length];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = grid.cell(start[i].x, start[i].y);
+        }
+        int player = grid.cell(initial.getPlayer().x, initial.getPlayer().y);
+        GridKernel.Stamp seen = grid.newStamp();
+        GridKernel.IntQueue queue = grid.newQueue();
+        int[] parent = new int[grid.size];
+        StringBuilder plan = new StringBuilder();
+        for (int code : pushes) {
+            int b = code >> 2;
+            int dir = code & 3;
+            int target = boxes[b] - grid.step[dir];
+            seen.next();
+            seen.mark(player);
+            parent[player] = player;
+            queue.clear();
+            queue.add(player);
+            while (!queue.isEmpty() && !seen.contains(target)) {
+                int cell = queue.poll();
+                for (int step : grid.step) {
+                    int next = cell + step;
+                    if (grid.wall[next] || seen.contains(next) || indexOf(boxes, next) >= 0) {
+                        continue;
+                    }
+                    seen.mark(next);
+                    parent[next] = cell;
+                    queue.add(next);
+                }
+            }
+            if (!seen.contains(target)) {
+                break;
+            }
+            int length = 0;
+            for (int cell = target; cell != player; cell = parent[cell]) {
+                length++;
+            }
+            char[] walk = new char[length];
+            for (int cell = target; cell != player; cell = parent[cell]) {
+                int delta = cell - parent[cell];
+                int d = 0;
+                while (grid.step[d] != delta) {
+                    d++;
+                }
+                walk[--length] = Constants.MOVES[d];
+            }
+            plan.append(walk).append(Constants.MOVES[dir]);
+            player = boxes[b];
+            boxes[b] += grid.step[dir];
+        }
+        return plan.toString();
+    }
+
+    private static int indexOf(int[] boxes, int cell) {
+        for (int i = 0; i < boxes.length; i++) {
+            if (boxes[i] == cell) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private char[][] itemsFor(State state) {
+        char[][] items = new char[mapData.length][];
+        for (int y = 0; y < mapData.length; y++) {
+            items[y] = new char[mapData[y].length];
+            Arrays.fill(items[y], ' ');
+        }
+        for (Coordinate box : state.getBoxes()) {
+            items[box.y][box.x] = Constants.BOX;
+        }
+        items[state.getPlayer().y][state.getPlayer().x] = Constants.PLAYER;
+        return items;
+    }
+
+    private final class Worker implements Runnable {
+        private final int boxCount;
+        private final int stride;
+        private final int[] boxAt;
+        private final int[] boxCells;
+        private final GridKernel.Stamp reach;
+        private final GridKernel.IntQueue flood;
+        private final int[] applied = new int[MAX_DEPTH];
+        private final int[] fromPlayer = new int[MAX_DEPTH];
+        private final int[] moves;
+        private final int[] weights;
+        private final int[][] best;
+        private final int[] bestLength;
+        private final int[] partial = new int[MAX_DEPTH];
+
+        private int player;
+        private int ply;
+        private int placed;
+        private int distanceSum;
+        private long seed;
+        private long playouts;
+        private int partialLength;
+        private int partialScore = Integer.MIN_VALUE;
+
+        Worker(State initial, long seed) {
+            Coordinate[] boxes = initial.getBoxes();
+            this.boxCount = boxes.length;
+            this.stride = boxCount * 4;
+            this.boxAt = new int[grid.size];
+            this.boxCells = new int[boxCount];
+            for (int b = 0; b < boxCount; b++) {
+                int cell = grid.cell(boxes[b].x, boxes[b].y);
+                boxCells[b] = cell;
+                boxAt[cell] = b + 1;
+                placed += grid.goal[cell] ? 1 : 0;
+                distanceSum += distance[cell];
+            }
+            this.player = grid.cell(initial.getPlayer().x, initial.getPlayer().y);
+            this.reach = grid.newStamp();
+            this.flood = grid.newQueue();
+            this.moves = new int[MAX_DEPTH * stride];
+            this.weights = new int[stride];
+            int levels = Math.max(0, LEVEL);
+            this.best = new int[levels + 1][MAX_DEPTH];
+            this.bestLength = new int[levels + 1];
+            this.seed = seed == 0L ? 1L : seed;
+        }
+
+        @Override
+        public void run() {
+            while (!stop) {
+                if (LEVEL <= 0) {
+                    playout();
+                } else {
+                    nested(LEVEL);
+                }
+            }
+        }
+
+        private int nested(int level) {
+            int start = ply;
+            int[] sequence = best[level];
+            int length = 0;
+            int bestScore = Integer.MIN_VALUE;
+            while (!stop && ply < MAX_DEPTH && placed < boxCount) {
+                int base = ply * stride;
+                int count = generate();
+                if (count == 0) {
+                    break;
+                }
+                for (int k = 0; k < count && !stop; k++) {
+                    apply(moves[base + k]);
+                    int score = level == 1 ? playout() : nested(level - 1);
+                    undo();
+                    if (score > bestScore) {
+                        bestScore = score;
+                        int at = ply - start;
+                        sequence[at] = moves[base + k];
+                        System.arraycopy(best[level - 1], 0, sequence, at + 1, bestLength[level - 1]);
+                        length = at + 1 + bestLength[level - 1];
+                    }
+                }
+                if (ply - start >= length) {
+                    break;
+                }
+                apply(sequence[ply - start]);
+            }
+            if (bestScore == Integer.MIN_VALUE) {
+                bestScore = score();
+                length = ply - start;
+            }
+            bestLength[level] = length;
+            while (ply > start) {
+                undo();
+            }
+            return bestScore;
+        }
+
+        private int playout() {
+            int start = ply;
+            while (ply < MAX_DEPTH && placed < boxCount) {
+                int count = generate();
+                if (count == 0) {
+                    break;
+                }
+                apply(pick(ply * stride, count));
+            }
+            int score = score();
+            if (placed == boxCount) {
+                found(applied, ply);
+            } else if (score > partialScore) {
+                partialScore = score;
+                partialLength = ply;
+                System.arraycopy(applied, 0, partial, 0, ply);
+            }
+            bestLength[0] = ply - start;
+            System.arraycopy(applied, start, best[0], 0, ply - start);
+            while (ply > start) {
+                undo();
+            }
+            playouts++;
+            if (System.nanoTime() > deadline) {
+                stop = true;
+            }
+            return score;
+        }
+
+        private int score() {
+            return placed == boxCount ? SOLVED - ply : placed * PLACED - distanceSum;
+        }
+
+        private int generate() {
+            reach.next();
+            reach.mark(player);
+            flood.clear();
+            flood.add(player);
+            while (!flood.isEmpty()) {
+                int cell = flood.poll();
+                for (int step : grid.step) {
+                    int next = cell + step;
+                    if (grid.wall[next] || boxAt[next] != 0 || reach.contains(next)) {
+                        continue;
+                    }
+                    reach.mark(next);
+                    flood.add(next);
+                }
+            }
+            int base = ply * stride;
+            int count = 0;
+            for (int b = 0; b < boxCount; b++) {
+                int box = boxCells[b];
+                for (int dir = 0; dir < grid.step.length; dir++) {
+                    int step = grid.step[dir];
+                    int dest = box + step;
+                    int code = b << 2 | dir;
+                    if (!reach.contains(box - step) || grid.wall[dest] || boxAt[dest] != 0
+                            || distance[dest] >= INF || deadAfter(b, box, dest)) {
+                        continue;
+                    }
+                    moves[base + count++] = code;
+                }
+            }
+            return count;
+        }
+
+        private boolean deadAfter(int b, int from, int to) {
+            if (!goalFree[to]) {
+                return false;
+            }
+            boxAt[from] = 0;
+            boxAt[to] = b + 1;
+            int index = 0;
+            int weight = 1;
+            for (int offset : neighbour) {
+                int n = to + offset;
+                if (grid.wall[n]) {
+                    index += LocalPatternTable.WALL * weight;
+                } else if (boxAt[n] != 0) {
+                    index += LocalPatternTable.BOX * weight;
+                }
+                weight *= 3;
+            }
+            boxAt[to] = 0;
+            boxAt[from] = b + 1;
+            return LocalPatternTable.isDeadlocked(index);
+        }
+
+        private int pick(int base, int count) {
+            int total = 0;
+            for (int k = 0; k < count; k++) {
+                int code = moves[base + k];
+                int box = boxCells[code >> 2];
+                int dest = box + grid.step[code & 3];
+                int weight = distance[dest] == 0 ? 8 : distance[dest] < distance[box] ? 4 : distance[dest] == distance[box] ? 2 : 1;
+                weights[k] = weight;
+                total += weight;
+            }
+            int roll = nextInt(total);
+            for (int k = 0; k < count; k++) {
+                roll -= weights[k];
+                if (roll < 0) {
+                    return moves[base + k];
+                }
+            }
+            return moves[base + count - 1];
+        }
+
+        private int nextInt(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) ((seed >>> 33) % bound);
+        }
+
+        private void apply(int code) {
+            int b = code >> 2;
+            int box = boxCells[b];
+            int dest = box + grid.step[code & 3];
+            applied[ply] = code;
+            fromPlayer[ply] = player;
+            ply++;
+            move(b, box, dest);
+            player = box;
+        }
+
+        private void undo() {
+            ply--;
+            int code = applied[ply];
+            int b = code >> 2;
+            int box = boxCells[b];
+            move(b, box, box - grid.step[code & 3]);
+            player = fromPlayer[ply];
+        }
+
+        private void move(int b, int from, int to) {
+            boxAt[from] = 0;
+            boxAt[to] = b + 1;
+            boxCells[b] = to;
+            placed += (grid.goal[to] ? 1 : 0) - (grid.goal[from] ? 1 : 0);
+            distanceSum += distance[to] - distance[from];
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package solver;
+
+import java.util.Arrays;
+
+final class Novelty {
+    private final GridKernel grid;
+    private final int[] index;
+    private final int cells;
+    private final long[][] singles;
+    private final long[][] pairs;
+    private final int[] scratch;
+
+    Novelty(GridKernel grid, int boxCount) {
+        this.grid = grid;
+        this.index = new int[grid.size];
+        Arrays.fill(index, -1);
+        int n = 0;
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (!grid.wall[cell]) {
+                index[cell] = n++;
+            }
+        }
+        this.cells = n;
+        this.singles = new long[boxCount + 1][];
+        this.pairs = new long[boxCount + 1][];
+        this.scratch = new int[boxCount];
+    }
+
+    int evaluate(Coordinate[] boxes, int partition) {
+        if (singles[partition] == null) {
+            singles[partition] = new long[(cells + 63) >>> 6];
+            pairs[partition] = new long[(int) (((long) cells * cells + 63) >>> 6)];
+        }
+        long[] unary = singles[partition];
+        long[] binary = pairs[partition];
+        int count = 0;
+        for (Coordinate box : boxes) {
+            scratch[count++] = index[grid.cell(box.x, box.y)];
+        }
+        int width = 3;
+        for (int i = 0; i < count; i++) {
+            if (set(unary, scratch[i])) {
+                width = 1;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                int a = Math.min(scratch[i], scratch[j]);
+                int b = Math.max(scratch[i], scratch[j]);
+                if (set(binary, a * cells + b) && width > 2) {
+                    width = 2;
+                }
+            }
+        }
+        return width;
+    }
+
+    private static boolean set(long[] bits, int bit) {
+        long mask = 1L << (bit & 63);
+        int word = bit >>> 6;
+        if ((bits[word] & mask) != 0) {
+            return false;
+        }
+        bits[word] |= mask;
+        return true;
+    }
+}
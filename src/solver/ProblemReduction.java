@@ -0,0 +1,137 @@
+package solver;
+
+import java.util.Arrays;
+
+final class ProblemReduction {
+    static boolean ENABLED = true;
+
+    private static final int INF = 1_000_000;
+    private static final int CAP = 256;
+
+    private final GridKernel grid;
+    private final Coordinate[] goals;
+    private final int[] goalIndex;
+    private final ThreadLru<int[][][]> tables = new ThreadLru<>(CAP);
+    private final ThreadLocal<int[]> distance;
+    private final ThreadLocal<GridKernel.IntQueue> queue;
+
+    private ProblemReduction(GridKernel grid, Coordinate[] goals) {
+        this.grid = grid;
+        this.goals = goals;
+        this.goalIndex = new int[grid.size];
+        Arrays.fill(goalIndex, -1);
+        for (int g = 0; g < goals.length; g++) {
+            goalIndex[grid.cell(goals[g].x, goals[g].y)] = g;
+        }
+        this.distance = ThreadLocal.withInitial(() -> new int[grid.size]);
+        this.queue = ThreadLocal.withInitial(grid::newQueue);
+    }
+
+    static ProblemReduction of(GridKernel grid, Coordinate[] goals) {
+        if (goals.length == 0 || goals.length >= Long.SIZE) {
+            return null;
+        }
+        for (Coordinate g : goals) {
+            if (g == null || g.x < 0 || g.y < 0 || g.x >= grid.cols || g.y >= grid.rows) {
+                return null;
+            }
+        }
+        return new ProblemReduction(grid, goals);
+    }
+
+    int activeBoxes(long parked, Coordinate[] boxes, int boxCount, Coordinate[] out) {
+        int n = 0;
+        for (int i = 0; i < boxCount; i++) {
+            Coordinate box = boxes[i];
+            if (!isParked(parked, grid.cell(box.x, box.y))) {
+                out[n++] = box;
+            }
+        }
+        return n;
+    }
+
+    long parkedGoals(Coordinate[] boxes, long seed) {
+        if (!ENABLED) {
+            return 0L;
+        }
+        long onGoal = 0L;
+        for (Coordinate box : boxes) {
+            if (box.x < 0 || box.y < 0 || box.x >= grid.cols || box.y >= grid.rows) {
+                continue;
+            }
+            int g = goalIndex[grid.cell(box.x, box.y)];
+            if (g >= 0) {
+                onGoal |= 1L << g;
+            }
+        }
+        long parked = (onGoal & seed) == seed ? seed : 0L;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (long rest = onGoal & ~parked; rest != 0L; rest &= rest - 1) {
+                int g = Long.numberOfTrailingZeros(rest);
+                int cell = grid.cell(goals[g].x, goals[g].y);
+                if (blocked(parked, cell, 1) && blocked(parked, cell, grid.width)) {
+                    parked |= 1L << g;
+                    changed = true;
+                }
+            }
+        }
+        return parked;
+    }
+
+    private boolean blocked(long parked, int cell, int axis) {
+        return isSolid(parked, cell - axis) || isSolid(parked, cell + axis);
+    }
+
+    private boolean isSolid(long parked, int cell) {
+        return grid.wall[cell] || isParked(parked, cell);
+    }
+
+    private boolean isParked(long parked, int cell) {
+        int g = goalIndex[cell];
+        return g >= 0 && (parked & (1L << g)) != 0L;
+    }
+
+    int[][][] tablesFor(long parked) {
+        int[][][] cached = tables.get(parked);
+        if (cached != null) {
+            return cached;
+        }
+        int[][][] built = new int[goals.length - Long.bitCount(parked)][][];
+        int n = 0;
+        for (int g = 0; g < goals.length; g++) {
+            if ((parked & (1L << g)) == 0L) {
+                built[n++] = distancesFrom(parked, grid.cell(goals[g].x, goals[g].y));
+            }
+        }
+        tables.put(parked, built);
+        return built;
+    }
+
+    private int[][] distancesFrom(long parked, int start) {
+        int[] distance = this.distance.get();
+        GridKernel.IntQueue queue = this.queue.get();
+        Arrays.fill(distance, INF);
+        distance[start] = 0;
+        queue.clear();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            int next = distance[cell] + 1;
+            for (int step : grid.step) {
+                int n = cell + step;
+                if (isSolid(parked, n) || distance[n] <= next) {
+                    continue;
+                }
+                distance[n] = next;
+                queue.add(n);
+            }
+        }
+        int[][] rowsOut = new int[grid.rows][grid.cols];
+        for (int y = 0; y < grid.rows; y++) {
+            System.arraycopy(distance, grid.cell(0, y), rowsOut[y], 0, grid.cols);
+        }
+        return rowsOut;
+    }
+}
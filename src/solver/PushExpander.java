@@ -0,0 +1,186 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+final class PushExpander {
+    private final char[][] mapData;
+    private final Deadlock deadlockDetector;
+    private final SearchStats stats;
+
+    final GridKernel grid;
+    private final GridKernel.Stamp visited;
+    private final GridKernel.Stamp boxMarks;
+    private final int[] boxIds;
+    private final int[] parentCell;
+    private final char[] moveToHere;
+    private final GridKernel.IntQueue queue;
+    private final int[] reached;
+    private int reachedCount;
+    private int start;
+
+    PushExpander(char[][] mapData, Coordinate[] goals, Deadlock deadlockDetector, SearchStats stats) {
+        this.mapData = mapData;
+        this.deadlockDetector = deadlockDetector;
+        this.stats = stats;
+        this.grid = GridKernel.of(mapData, goals);
+        this.visited = grid.newStamp();
+        this.boxMarks = grid.newStamp();
+        this.boxIds = new int[grid.size];
+        this.parentCell = new int[grid.size];
+        this.moveToHere = new char[grid.size];
+        this.queue = grid.newQueue();
+        this.reached = new int[grid.size];
+    }
+
+    int flood(State state) {
+        return flood(state.getBoxes(), grid.cell(state.getPlayer().x, state.getPlayer().y));
+    }
+
+    int flood(Coordinate[] boxes, int playerCell) {
+        boxMarks.next();
+        for (int i = 0; i < boxes.length; i++) {
+            int cell = grid.cell(boxes[i].x, boxes[i].y);
+            boxMarks.mark(cell);
+            boxIds[cell] = i;
+        }
+        start = playerCell;
+        visited.next();
+        visited.mark(start);
+        parentCell[start] = start;
+        queue.clear();
+        queue.add(start);
+        reachedCount = 0;
+        int min = start;
+        while (!queue.isEmpty()) {
+            int p = queue.poll();
+            reached[reachedCount++] = p;
+            if (p < min) {
+                min = p;
+            }
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int n = p + grid.step[dir];
+                if (visited.contains(n) || grid.wall[n] || boxMarks.contains(n)) {
+                    continue;
+                }
+                visited.mark(n);
+                parentCell[n] = p;
+                moveToHere[n] = Constants.MOVES[dir];
+                queue.add(n);
+            }
+        }
+        return min;
+    }
+
+    int reachedCount() {
+        return reachedCount;
+    }
+
+    int reached(int index) {
+        return reached[index];
+    }
+
+    boolean reaches(int cell) {
+        return visited.contains(cell);
+    }
+
+    boolean hasBox(int cell) {
+        return boxMarks.contains(cell);
+    }
+
+    int boxIndex(int cell) {
+        return boxIds[cell];
+    }
+
+    List<State> expand(State state) {
+        Coordinate[] boxes = state.getBoxes();
+        List<State> children = new ArrayList<>();
+        for (int i = 0; i < reachedCount; i++) {
+            int p = reached[i];
+            for (int dir = 0; dir < grid.step.length; dir++) {
+                int box = p + grid.step[dir];
+                if (!boxMarks.contains(box)) {
+                    continue;
+                }
+                int dest = box + grid.step[dir];
+                if (grid.wall[dest] || boxMarks.contains(dest)) {
+                    continue;
+                }
+                int destX = grid.x(dest);
+                int destY = grid.y(dest);
+                if (deadlockDetector.isCornerNoGoal(destX, destY)) {
+                    stats.recordCornerPruned();
+                    continue;
+                }
+                Coordinate[] updated = boxes.clone();
+                updated[boxIds[box]] = new Coordinate(destX, destY);
+                if (deadlockDetector.isLocalFreeze(destX, destY, updated)) {
+                    stats.recordFreezePruned();
+                    continue;
+                }
+                if (deadlockDetector.isWallLineFreeze(destX, destY, updated)) {
+                    stats.recordWallLinePruned();
+                    continue;
+                }
+                State child = State.push(state,
+                        new Coordinate(grid.x(box), grid.y(box)),
+                        updated,
+                        Constants.MOVES[dir],
+                        0,
+                        walkTo(p));
+                if (deadlockDetector.matchesLearnedPattern(child.getBoxes(), child.getMovedBoxIndex())) {
+                    stats.recordPatternPruned();
+                    continue;
+                }
+                if (deadlockDetector.isProvableDeadlock(child)) {
+                    stats.recordFreezePruned();
+                    continue;
+                }
+                int lowerBound = Heuristic.pushLowerBound(child);
+                if (lowerBound == Integer.MAX_VALUE) {
+                    continue;
+                }
+                children.add(child.withHeuristic(lowerBound));
+            }
+        }
+        return children;
+    }
+
+    char[] walkTo(int target) {
+        int length = 0;
+        for (int c = target; c != start; c = parentCell[c]) {
+            length++;
+        }
+        char[] path = new char[length];
+        int c = target;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = moveToHere[c];
+            c = parentCell[c];
+        }
+        return path;
+    }
+
+    static long key(Coordinate[] sortedBoxes, int regionCell) {
+        long key = 1469598103934665603L;
+        key = (key ^ regionCell) * 1099511628211L;
+        for (Coordinate box : sortedBoxes) {
+            key = (key ^ box.x) * 1099511628211L;
+            key = (key ^ box.y) * 1099511628211L;
+        }
+        return key == 0L ? 1L : key;
+    }
+
+    char[][] itemsFor(State state) {
+        char[][] items = new char[grid.rows][grid.cols];
+        for (char[] row : items) {
+            Arrays.fill(row, ' ');
+        }
+        for (Coordinate box : state.getBoxes()) {
+            items[box.y][box.x] = mapData[box.y][box.x] == Constants.GOAL ? Constants.BOX_ON_GOAL : Constants.BOX;
+        }
+        Coordinate player = state.getPlayer();
+        items[player.y][player.x] = mapData[player.y][player.x] == Constants.GOAL ? Constants.PLAYER_ON_GOAL : Constants.PLAYER;
+        return items;
+    }
+}
@@ -0,0 +1,46 @@
+package solver;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+interface PushFilter {
+    String name();
+
+    boolean rejects(Candidate candidate);
+
+    static PushFilter of(String name, Predicate<Candidate> test) {
+        return new PushFilter() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public boolean rejects(Candidate candidate) {
+                return test.test(candidate);
+            }
+        };
+    }
+
+    final class Candidate {
+        State state;
+        Coordinate[] boxes;
+        int movedIdx;
+        int x;
+        int y;
+        long signature;
+        long encodedCost;
+        Map<Long, Long> bestCosts;
+
+        void set(State state, long encodedCost) {
+            this.state = state;
+            this.boxes = state.getBoxes();
+            this.movedIdx = state.getMovedBoxIndex();
+            Coordinate moved = boxes[movedIdx];
+            this.x = moved.x;
+            this.y = moved.y;
+            this.signature = state.getHash();
+            this.encodedCost = encodedCost;
+        }
+    }
+}
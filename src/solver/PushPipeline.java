@@ -0,0 +1,117 @@
+package solver;
+
+final class PushPipeline {
+    private static final int REORDER_INTERVAL = 1024;
+    private static final long DROP_AFTER = 50_000L;
+    private static final int TIMING_MASK = 7;
+
+    private final PushFilter[] filters;
+    private final long[] evaluated;
+    private final long[] rejected;
+    private final long[] timed;
+    private final long[] nanos;
+    private final boolean[] dropped;
+    private final int[] order;
+    private int active;
+    private long candidates;
+
+    PushPipeline(PushFilter... filters) {
+        this.filters = filters.clone();
+        int n = filters.length;
+        this.evaluated = new long[n];
+        this.rejected = new long[n];
+        this.timed = new long[n];
+        this.nanos = new long[n];
+        this.dropped = new boolean[n];
+        this.order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        this.active = n;
+    }
+
+    boolean accepts(PushFilter.Candidate candidate) {
+        long sequence = candidates++;
+        boolean timing = (sequence & TIMING_MASK) == 0;
+        boolean accepted = true;
+        for (int i = 0; i < active; i++) {
+            int f = order[i];
+            boolean reject;
+            if (timing) {
+                long start = System.nanoTime();
+                reject = filters[f].rejects(candidate);
+                nanos[f] += System.nanoTime() - start;
+                timed[f]++;
+            } else {
+                reject = filters[f].rejects(candidate);
+            }
+            evaluated[f]++;
+            if (reject) {
+                rejected[f]++;
+                accepted = false;
+                break;
+            }
+        }
+        if (candidates % REORDER_INTERVAL == 0) {
+            reorder();
+        }
+        return accepted;
+    }
+
+    private void reorder() {
+        int count = 0;
+        for (int i = 0; i < active; i++) {
+            int f = order[i];
+            if (evaluated[f] >= DROP_AFTER && rejected[f] == 0L) {
+                dropped[f] = true;
+                continue;
+            }
+            order[count++] = f;
+        }
+        active = count;
+        for (int i = 1; i < active; i++) {
+            int f = order[i];
+            double score = expectedCostPerRejection(f);
+            int j = i - 1;
+            while (j >= 0 && expectedCostPerRejection(order[j]) > score) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = f;
+        }
+    }
+
+    private double expectedCostPerRejection(int f) {
+        if (timed[f] == 0L || evaluated[f] == 0L) {
+            return 0.0;
+        }
+        double cost = (double) nanos[f] / (double) timed[f];
+        double rate = (double) (rejected[f] + 1L) / (double) (evaluated[f] + 2L);
+        return cost / rate;
+    }
+
+    String describe() {
+        StringBuilder sb = new StringBuilder("pipeline=");
+        for (int i = 0; i < active; i++) {
+            appendStage(sb, order[i], i > 0);
+        }
+        for (int f = 0; f < filters.length; f++) {
+            if (dropped[f]) {
+                appendStage(sb, f, sb.length() > "pipeline=".length());
+                sb.append("(dropped)");
+            }
+        }
+        return sb.toString();
+    }
+
+    private void appendStage(StringBuilder sb, int f, boolean separator) {
+        if (separator) {
+            sb.append(',');
+        }
+        long avg = timed[f] == 0L ? 0L : nanos[f] / timed[f];
+        sb.append(filters[f].name())
+                .append(':').append(rejected[f])
+                .append('/').append(evaluated[f])
+                .append('/').append(avg).append("ns");
+    }
+}
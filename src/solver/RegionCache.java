@@ -1,17 +1,10 @@
 package solver;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.function.BooleanSupplier;
 
 public final class RegionCache {
     private static final int CAP = 16384;
-    private static final LinkedHashMap<Long, Boolean> map = new LinkedHashMap<>(CAP, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
-            return size() > CAP;
-        }
-    };
+    private static final ThreadLru<Boolean> map = new ThreadLru<>(CAP);
     private static final long P = 1099511628211L;
 
     private RegionCache() {}
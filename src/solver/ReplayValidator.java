@@ -160,7 +160,7 @@ public final class ReplayValidator {
         return x >= 0 && x < width && y >= 0 && y < height;
     }
 
-    private static int directionIndex(char move) {
+    static int directionIndex(char move) {
         switch (move) {
             case 'u':
             case 'U':
@@ -0,0 +1,102 @@
+package solver;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+final class RoomGraph {
+    static final int INF = 1_000_000;
+    private static final int CAP = 16384;
+
+    private final int[][] cellRoom;
+    private final int[][] distance;
+    private final int[] goalRooms;
+    private final ThreadLru<Integer> costs = new ThreadLru<>(CAP);
+
+    private RoomGraph(int roomCount, int[][] cellRoom, boolean[][] crossable, int[] goalRooms) {
+        this.cellRoom = cellRoom;
+        this.goalRooms = goalRooms;
+        this.distance = new int[roomCount][roomCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int from = 0; from < roomCount; from++) {
+            int[] dist = distance[from];
+            Arrays.fill(dist, INF);
+            dist[from] = 0;
+            queue.add(from);
+            while (!queue.isEmpty()) {
+                int room = queue.poll();
+                for (int next = 0; next < roomCount; next++) {
+                    if (crossable[room][next] && dist[next] == INF) {
+                        dist[next] = dist[room] + 1;
+                        queue.add(next);
+                    }
+                }
+            }
+        }
+    }
+
+    static RoomGraph build(char[][] mapData, Coordinate[] goals) {
+        int roomCount = Rooms.goalsInRoom == null ? 0 : Rooms.goalsInRoom.length;
+        if (roomCount < 2 || goals.length == 0 || Rooms.rows != mapData.length) {
+            return null;
+        }
+        GridKernel grid = GridKernel.of(mapData, goals);
+        boolean[][] crossable = new boolean[roomCount][roomCount];
+        for (int y = 0; y < grid.rows; y++) {
+            for (int x = 0; x < grid.cols; x++) {
+                int cell = grid.cell(x, y);
+                int room = Rooms.roomId[y][x];
+                if (room < 0) {
+                    continue;
+                }
+                for (int step : grid.step) {
+                    int next = cell + step;
+                    if (grid.wall[next] || grid.wall[cell - step]) {
+                        continue;
+                    }
+                    int other = Rooms.roomId[grid.y(next)][grid.x(next)];
+                    if (other != room) {
+                        crossable[room][other] = true;
+                    }
+                }
+            }
+        }
+        int[] goalRooms = new int[goals.length];
+        for (int g = 0; g < goals.length; g++) {
+            goalRooms[g] = Rooms.roomId[goals[g].y][goals[g].x];
+        }
+        return new RoomGraph(roomCount, Rooms.roomId, crossable, goalRooms);
+    }
+
+    int roomOf(Coordinate cell) {
+        return cellRoom[cell.y][cell.x];
+    }
+
+    int cost(Coordinate[] boxes) {
+        int n = goalRooms.length;
+        if (boxes.length > n) {
+            return INF;
+        }
+        int[] rooms = new int[boxes.length];
+        for (int i = 0; i < boxes.length; i++) {
+            rooms[i] = roomOf(boxes[i]);
+        }
+        Arrays.sort(rooms);
+        long key = 1469598103934665603L;
+        for (int room : rooms) {
+            key = (key ^ room) * 1099511628211L;
+        }
+        Integer cached = costs.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        int[][] matrix = new int[n][n];
+        for (int b = 0; b < rooms.length; b++) {
+            for (int g = 0; g < n; g++) {
+                matrix[b][g] = distance[rooms[b]][goalRooms[g]];
+            }
+        }
+        int result = Math.min(INF, Heuristic.assignmentCost(matrix, n));
+        costs.put(key, result);
+        return result;
+    }
+}
@@ -7,6 +7,8 @@ import reader.FileReader;
 import reader.MapData;
 
 public final class RunSolver {
+    private static boolean requireSolved;
+
     private RunSolver() {
     }
 
@@ -15,7 +17,7 @@ public final class RunSolver {
         boolean anyFail = false;
         parseArguments(args, mapNames);
         if (mapNames.isEmpty()) {
-            System.err.println("Usage: java -cp out solver.RunSolver [--diag] [--diag-sample=N] [--diag-no-proximity] <map1> [map2 ...]");
+            System.err.println("Usage: java -cp out solver.RunSolver [--diag] [--diag-sample=N] [--diag-no-proximity] [--patterns-dir=DIR] [--mode=" + SearchMode.names() + "] [--beam-width=N] [--eval-threads=N] [--nmcs-level=N] [--nmcs-threads=N] [--no-reduction] [--no-decomposition] [--room-guide] [--no-endgame] [--prove-unsolvable] [--checkpoint-dir=DIR] [--require-solved] <map1> [map2 ...]");
             System.exit(1);
         }
         for (String mapName : mapNames) {
@@ -80,6 +82,13 @@ public final class RunSolver {
 
                 SearchStats st = bot.getLastStats();
                 long elapsedMs = (solveEnd - solveStart) / 1_000_000L;
+                SearchOutcome outcome = bot.getLastOutcome();
+                if (outcome != null && outcome.isProvenUnsolvable()) {
+                    System.out.println(mapName + " UNSOLVABLE reason=" + outcome.getUnsolvableReason()
+                            + " time=" + elapsedMs + "ms");
+                    anyFail = true;
+                    continue;
+                }
                 ReplayValidator.ValidationResult validation = ReplayValidator.validate(mapData, itemsData, plan);
                 boolean solved = validation.fullyValid && validation.solved;
                 int len = plan.length();
@@ -95,6 +104,7 @@ public final class RunSolver {
                         + " corner=" + st.getCornerPruned()
                         + " freeze=" + st.getFreezePruned()
                         + " wallLine=" + st.getWallLinePruned()
+                        + " pattern=" + st.getPatternPruned()
                         + " dup=" + st.getDuplicatePruned()
                         + " goals=" + validation.boxesOnGoals
                         + " solved=" + solved);
@@ -110,7 +120,7 @@ public final class RunSolver {
                     Diagnostics.emitDiagnostics(st.getElapsedMillis(), solved, st.isTimeLimitHit(), st.getClosedStates());
                 }
 
-                if (len == 0) {
+                if (len == 0 || (requireSolved && !solved)) {
                     anyFail = true;
                 }
             } catch (OutOfMemoryError oom) {
@@ -144,6 +154,81 @@ public final class RunSolver {
                 }
                 continue;
             }
+            if (arg.startsWith("--patterns-dir=")) {
+                DeadlockPatterns.STORE_DIR = arg.substring("--patterns-dir=".length());
+                continue;
+            }
+            if (arg.startsWith("--mode=")) {
+                String value = arg.substring("--mode=".length());
+                if (!SearchMode.select(value)) {
+                    System.err.println("Unknown --mode value: " + value);
+                }
+                continue;
+            }
+            if (arg.startsWith("--checkpoint-dir=")) {
+                Checkpoint.DIR = arg.substring("--checkpoint-dir=".length());
+                continue;
+            }
+            if (arg.startsWith("--beam-width=")) {
+                String value = arg.substring("--beam-width=".length());
+                try {
+                    GBFS.BEAM_WIDTH = Math.max(1, Integer.parseInt(value));
+                } catch (NumberFormatException ignore) {
+                    System.err.println("Invalid --beam-width value: " + value);
+                }
+                continue;
+            }
+            if (arg.startsWith("--eval-threads=")) {
+                String value = arg.substring("--eval-threads=".length());
+                try {
+                    GBFS.EVAL_THREADS = Math.max(1, Integer.parseInt(value));
+                } catch (NumberFormatException ignore) {
+                    System.err.println("Invalid --eval-threads value: " + value);
+                }
+                continue;
+            }
+            if ("--require-solved".equals(arg)) {
+                requireSolved = true;
+                continue;
+            }
+            if ("--prove-unsolvable".equals(arg)) {
+                UnsolvabilityProver.ENABLED = true;
+                continue;
+            }
+            if (arg.startsWith("--nmcs-level=")) {
+                String value = arg.substring("--nmcs-level=".length());
+                try {
+                    NestedMonteCarlo.LEVEL = Math.max(0, Integer.parseInt(value));
+                } catch (NumberFormatException ignore) {
+                    System.err.println("Invalid --nmcs-level value: " + value);
+                }
+                continue;
+            }
+            if (arg.startsWith("--nmcs-threads=")) {
+                String value = arg.substring("--nmcs-threads=".length());
+                try {
+                    NestedMonteCarlo.THREADS = Math.max(1, Integer.parseInt(value));
+                } catch (NumberFormatException ignore) {
+                    System.err.println("Invalid --nmcs-threads value: " + value);
+                }
+                continue;
+            }
+            if ("--no-endgame".equals(arg)) {
+                EndgameTable.ENABLED = false;
+                continue;
+            }
+            if ("--room-guide".equals(arg)) {
+                GBFS.ROOM_GUIDE = true;
+                continue;
+            }
+            if ("--no-decomposition".equals(arg)) {
+                Decomposition.ENABLED = false;
+                continue;
+            }
+            if ("--no-reduction".equals(arg)) {
+                ProblemReduction.ENABLED = false;
+                continue;
+            }
             if ("--diag-no-proximity".equals(arg)) {
                 diagEnabled = true;
                 Diagnostics.ZERO_PROXIMITY = true;
@@ -0,0 +1,7 @@
+package solver;
+
+interface SearchEngine {
+    SearchOutcome search(State initial);
+
+    SearchStats getStatistics();
+}
@@ -0,0 +1,38 @@
+package solver;
+
+public final class SearchMode {
+    public static final String GREEDY = "gbfs";
+    public static final String ANYTIME = "anytime";
+    public static final String IDA = "ida";
+    public static final String BIDIRECTIONAL = "bidir";
+    public static final String HILL_CLIMB = "ehc";
+    public static final String WIDTH = "bfws";
+    public static final String MULTI_QUEUE = "multi";
+    public static final String BEAM = "beam";
+    public static final String EXTERNAL = "external";
+    public static final String NESTED = "nmcs";
+
+    private static final String[] KNOWN = {GREEDY, ANYTIME, IDA, BIDIRECTIONAL, HILL_CLIMB, WIDTH, MULTI_QUEUE, BEAM, EXTERNAL, NESTED};
+
+    public static String SELECTED = GREEDY;
+
+    private SearchMode() {}
+
+    public static boolean select(String name) {
+        for (String mode : KNOWN) {
+            if (mode.equals(name)) {
+                SELECTED = mode;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean is(String mode) {
+        return SELECTED.equals(mode);
+    }
+
+    public static String names() {
+        return String.join("|", KNOWN);
+    }
+}
@@ -4,11 +4,28 @@ public final class SearchOutcome {
     private final String bestPlan;
     private final boolean bestPlanSolves;
     private final String bestCompletePlan;
+    private final double suboptimalityBound;
+    private final String unsolvableReason;
 
     SearchOutcome(String bestPlan, boolean bestPlanSolves, String bestCompletePlan) {
+        this(bestPlan, bestPlanSolves, bestCompletePlan, Double.NaN);
+    }
+
+    SearchOutcome(String bestPlan, boolean bestPlanSolves, String bestCompletePlan, double suboptimalityBound) {
+        this(bestPlan, bestPlanSolves, bestCompletePlan, suboptimalityBound, null);
+    }
+
+    private SearchOutcome(String bestPlan, boolean bestPlanSolves, String bestCompletePlan, double suboptimalityBound,
+                          String unsolvableReason) {
         this.bestPlan = bestPlan;
         this.bestPlanSolves = bestPlanSolves;
         this.bestCompletePlan = bestCompletePlan;
+        this.suboptimalityBound = suboptimalityBound;
+        this.unsolvableReason = unsolvableReason;
+    }
+
+    static SearchOutcome unsolvable(String reason) {
+        return new SearchOutcome("", false, null, Double.NaN, reason);
     }
 
     public String getBestPlan() {
@@ -22,4 +39,16 @@ public final class SearchOutcome {
     public String getBestCompletePlan() {
         return bestCompletePlan;
     }
+
+    public double getSuboptimalityBound() {
+        return suboptimalityBound;
+    }
+
+    public boolean isProvenUnsolvable() {
+        return unsolvableReason != null;
+    }
+
+    public String getUnsolvableReason() {
+        return unsolvableReason;
+    }
 }
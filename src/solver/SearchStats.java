@@ -7,8 +7,28 @@ public final class SearchStats {
     private long cornerPruned;
     private long freezePruned;
     private long wallLinePruned;
+    private long patternPruned;
+    private long patternsLearned;
     private long duplicatePruned;
     private long corridorSlides;
+    private long goalMacros;
+    private long playouts;
+    private long endgameHits;
+    private long roomPlanPruned;
+    private long reachFloods;
+    private long checkpointsWritten;
+    private long spilledRecords;
+    private long beamPasses;
+    private long preferredPushes;
+    private long novelStates;
+    private long plateauFallbacks;
+    private long hillClimbSteps;
+    private long frontierMeetings;
+    private long pullExpansions;
+    private long transpositionHits;
+    private long idaIterations;
+    private long incumbentImprovements;
+    private double suboptimalityBound = Double.NaN;
     private int maxBoxesOnGoals;
     private int finalBoxesOnGoals;
     private long progressTiebreakHits;
@@ -36,8 +56,28 @@ public final class SearchStats {
         this.cornerPruned = other.cornerPruned;
         this.freezePruned = other.freezePruned;
         this.wallLinePruned = other.wallLinePruned;
+        this.patternPruned = other.patternPruned;
+        this.patternsLearned = other.patternsLearned;
         this.duplicatePruned = other.duplicatePruned;
         this.corridorSlides = other.corridorSlides;
+        this.goalMacros = other.goalMacros;
+        this.playouts = other.playouts;
+        this.endgameHits = other.endgameHits;
+        this.roomPlanPruned = other.roomPlanPruned;
+        this.reachFloods = other.reachFloods;
+        this.checkpointsWritten = other.checkpointsWritten;
+        this.spilledRecords = other.spilledRecords;
+        this.beamPasses = other.beamPasses;
+        this.preferredPushes = other.preferredPushes;
+        this.novelStates = other.novelStates;
+        this.plateauFallbacks = other.plateauFallbacks;
+        this.hillClimbSteps = other.hillClimbSteps;
+        this.frontierMeetings = other.frontierMeetings;
+        this.pullExpansions = other.pullExpansions;
+        this.transpositionHits = other.transpositionHits;
+        this.idaIterations = other.idaIterations;
+        this.incumbentImprovements = other.incumbentImprovements;
+        this.suboptimalityBound = other.suboptimalityBound;
         this.maxBoxesOnGoals = other.maxBoxesOnGoals;
         this.finalBoxesOnGoals = other.finalBoxesOnGoals;
         this.progressTiebreakHits = other.progressTiebreakHits;
@@ -70,8 +110,28 @@ public final class SearchStats {
         this.cornerPruned = 0L;
         this.freezePruned = 0L;
         this.wallLinePruned = 0L;
+        this.patternPruned = 0L;
+        this.patternsLearned = 0L;
         this.duplicatePruned = 0L;
         this.corridorSlides = 0L;
+        this.goalMacros = 0L;
+        this.playouts = 0L;
+        this.endgameHits = 0L;
+        this.roomPlanPruned = 0L;
+        this.reachFloods = 0L;
+        this.checkpointsWritten = 0L;
+        this.spilledRecords = 0L;
+        this.beamPasses = 0L;
+        this.preferredPushes = 0L;
+        this.novelStates = 0L;
+        this.plateauFallbacks = 0L;
+        this.hillClimbSteps = 0L;
+        this.frontierMeetings = 0L;
+        this.pullExpansions = 0L;
+        this.transpositionHits = 0L;
+        this.idaIterations = 0L;
+        this.incumbentImprovements = 0L;
+        this.suboptimalityBound = Double.NaN;
         this.maxBoxesOnGoals = 0;
         this.finalBoxesOnGoals = 0;
         this.progressTiebreakHits = 0L;
@@ -141,12 +201,92 @@ public final class SearchStats {
         wallLinePruned++;
     }
 
+    void recordPatternPruned() {
+        patternPruned++;
+    }
+
+    void recordPatternLearned() {
+        patternsLearned++;
+    }
+
     void recordDuplicatePruned() {
         duplicatePruned++;
     }
 
-    void recordCorridorSlide() {
-        corridorSlides++;
+    void recordCorridorSlide(int steps) {
+        corridorSlides += steps;
+    }
+
+    void recordGoalMacro() {
+        goalMacros++;
+    }
+
+    void recordPlayouts(long count) {
+        playouts += count;
+    }
+
+    void recordEndgameHit() {
+        endgameHits++;
+    }
+
+    void recordRoomPlanPruned() {
+        roomPlanPruned++;
+    }
+
+    void recordReachFlood() {
+        reachFloods++;
+    }
+
+    void recordCheckpointWritten() {
+        checkpointsWritten++;
+    }
+
+    void recordSpilledRecords(int count) {
+        spilledRecords += count;
+    }
+
+    void recordBeamPass() {
+        beamPasses++;
+    }
+
+    void recordPreferredPush() {
+        preferredPushes++;
+    }
+
+    void recordNovelState() {
+        novelStates++;
+    }
+
+    void recordPlateauFallback() {
+        plateauFallbacks++;
+    }
+
+    void recordHillClimbStep() {
+        hillClimbSteps++;
+    }
+
+    void recordFrontierMeeting() {
+        frontierMeetings++;
+    }
+
+    void recordPullExpansion() {
+        pullExpansions++;
+    }
+
+    void recordTranspositionHit() {
+        transpositionHits++;
+    }
+
+    void recordIdaIteration() {
+        idaIterations++;
+    }
+
+    void recordIncumbentImproved() {
+        incumbentImprovements++;
+    }
+
+    void setSuboptimalityBound(double bound) {
+        suboptimalityBound = bound;
     }
 
     void accumulate(SearchStats other) {
@@ -161,8 +301,30 @@ public final class SearchStats {
         this.cornerPruned += other.cornerPruned;
         this.freezePruned += other.freezePruned;
         this.wallLinePruned += other.wallLinePruned;
+        this.patternPruned += other.patternPruned;
+        this.patternsLearned += other.patternsLearned;
         this.duplicatePruned += other.duplicatePruned;
         this.corridorSlides += other.corridorSlides;
+        this.goalMacros += other.goalMacros;
+        this.playouts += other.playouts;
+        this.endgameHits += other.endgameHits;
+        this.roomPlanPruned += other.roomPlanPruned;
+        this.reachFloods += other.reachFloods;
+        this.checkpointsWritten += other.checkpointsWritten;
+        this.spilledRecords += other.spilledRecords;
+        this.beamPasses += other.beamPasses;
+        this.preferredPushes += other.preferredPushes;
+        this.novelStates += other.novelStates;
+        this.plateauFallbacks += other.plateauFallbacks;
+        this.hillClimbSteps += other.hillClimbSteps;
+        this.frontierMeetings += other.frontierMeetings;
+        this.pullExpansions += other.pullExpansions;
+        this.transpositionHits += other.transpositionHits;
+        this.idaIterations += other.idaIterations;
+        this.incumbentImprovements += other.incumbentImprovements;
+        if (!Double.isNaN(other.suboptimalityBound)) {
+            this.suboptimalityBound = other.suboptimalityBound;
+        }
         if (other.maxBoxesOnGoals > this.maxBoxesOnGoals) {
             this.maxBoxesOnGoals = other.maxBoxesOnGoals;
         }
@@ -206,6 +368,14 @@ public final class SearchStats {
         return wallLinePruned;
     }
 
+    public long getPatternPruned() {
+        return patternPruned;
+    }
+
+    public long getPatternsLearned() {
+        return patternsLearned;
+    }
+
     public long getDuplicatePruned() {
         return duplicatePruned;
     }
@@ -214,6 +384,78 @@ public final class SearchStats {
         return corridorSlides;
     }
 
+    public long getGoalMacros() {
+        return goalMacros;
+    }
+
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    public long getEndgameHits() {
+        return endgameHits;
+    }
+
+    public long getRoomPlanPruned() {
+        return roomPlanPruned;
+    }
+
+    public long getReachFloods() {
+        return reachFloods;
+    }
+
+    public long getCheckpointsWritten() {
+        return checkpointsWritten;
+    }
+
+    public long getSpilledRecords() {
+        return spilledRecords;
+    }
+
+    public long getBeamPasses() {
+        return beamPasses;
+    }
+
+    public long getPreferredPushes() {
+        return preferredPushes;
+    }
+
+    public long getNovelStates() {
+        return novelStates;
+    }
+
+    public long getPlateauFallbacks() {
+        return plateauFallbacks;
+    }
+
+    public long getHillClimbSteps() {
+        return hillClimbSteps;
+    }
+
+    public long getFrontierMeetings() {
+        return frontierMeetings;
+    }
+
+    public long getPullExpansions() {
+        return pullExpansions;
+    }
+
+    public long getTranspositionHits() {
+        return transpositionHits;
+    }
+
+    public long getIdaIterations() {
+        return idaIterations;
+    }
+
+    public long getIncumbentImprovements() {
+        return incumbentImprovements;
+    }
+
+    public double getSuboptimalityBound() {
+        return suboptimalityBound;
+    }
+
     void recordBoxesOnGoalsCandidate(int value) {
         if (value > maxBoxesOnGoals) {
             maxBoxesOnGoals = value;
@@ -289,8 +531,30 @@ public final class SearchStats {
         sb.append(" corner_pruned=").append(cornerPruned);
         sb.append(" freeze_pruned=").append(freezePruned);
         sb.append(" wall_line_pruned=").append(wallLinePruned);
+        sb.append(" pattern_pruned=").append(patternPruned);
+        sb.append(" patterns_learned=").append(patternsLearned);
         sb.append(" duplicates=").append(duplicatePruned);
         sb.append(" corridor_slides=").append(corridorSlides);
+        sb.append(" goal_macros=").append(goalMacros);
+        sb.append(" playouts=").append(playouts);
+        sb.append(" endgame_hits=").append(endgameHits);
+        sb.append(" room_plan_pruned=").append(roomPlanPruned);
+        sb.append(" reach_floods=").append(reachFloods);
+        sb.append(" checkpoints=").append(checkpointsWritten);
+        sb.append(" spilled=").append(spilledRecords);
+        sb.append(" beam_passes=").append(beamPasses);
+        sb.append(" preferred=").append(preferredPushes);
+        sb.append(" novel=").append(novelStates);
+        sb.append(" ehc_fallbacks=").append(plateauFallbacks);
+        sb.append(" ehc_steps=").append(hillClimbSteps);
+        sb.append(" meetings=").append(frontierMeetings);
+        sb.append(" pulls=").append(pullExpansions);
+        sb.append(" tt_hits=").append(transpositionHits);
+        sb.append(" ida_iterations=").append(idaIterations);
+        sb.append(" incumbents=").append(incumbentImprovements);
+        if (!Double.isNaN(suboptimalityBound)) {
+            sb.append(" bound=").append(String.format(java.util.Locale.ROOT, "%.3f", suboptimalityBound));
+        }
         sb.append(" limit_hit=").append(timeLimitHit);
         sb.append(" boxes_on_goals_max=").append(maxBoxesOnGoals);
         sb.append(" final_boxes=").append(finalBoxesOnGoals);
@@ -0,0 +1,424 @@
+package solver;
+
+import java.util.Arrays;
+
+final class SmallSolver {
+    private static final long MAX_BITS = 1L << 28;
+    private static final int MAX_NODES = 1 << 21;
+    private static final int MAX_PROOF_STATES = 1 << 22;
+    private static final int DEADLINE_MASK = 255;
+
+    private final GridKernel grid;
+    private final int[] floorIndex;
+    private final int[] floorCells;
+    private final int floorCount;
+    private final int[] liveIndex;
+    private final int[] liveCells;
+    private final boolean[] goalLive;
+    private final int boxCount;
+    private final long[][] binomial;
+    private final GridKernel.Stamp reach;
+    private final GridKernel.Stamp region;
+    private final GridKernel.IntQueue flood;
+    private final int[] boxes;
+    private final int[] sorted;
+    private final int[] parent;
+    private final boolean recordPlan;
+
+    private long[] keys = new long[1024];
+    private long[] links;
+    private int head;
+    private int size;
+    private long[] bits;
+    private long[] table;
+    private int stored;
+    private boolean exhausted;
+
+    private SmallSolver(GridKernel grid, boolean[] live, int boxCount, boolean recordPlan) {
+        this.grid = grid;
+        this.boxCount = boxCount;
+        this.recordPlan = recordPlan;
+        this.links = recordPlan ? new long[keys.length] : null;
+        this.floorIndex = new int[grid.size];
+        this.liveIndex = new int[grid.size];
+        Arrays.fill(floorIndex, -1);
+        Arrays.fill(liveIndex, -1);
+        int floor = 0;
+        int liveCount = 0;
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (!grid.wall[cell]) {
+                floorIndex[cell] = floor++;
+            }
+            if (live[cell]) {
+                liveIndex[cell] = liveCount++;
+            }
+        }
+        this.floorCount = floor;
+        this.floorCells = new int[floor];
+        this.liveCells = new int[liveCount];
+        this.goalLive = new boolean[liveCount];
+        for (int cell = 0; cell < grid.size; cell++) {
+            if (floorIndex[cell] >= 0) {
+                floorCells[floorIndex[cell]] = cell;
+            }
+            if (liveIndex[cell] >= 0) {
+                liveCells[liveIndex[cell]] = cell;
+                goalLive[liveIndex[cell]] = grid.goal[cell];
+            }
+        }
+        this.binomial = new long[liveCount + 1][boxCount + 1];
+        for (int n = 0; n <= liveCount; n++) {
+            binomial[n][0] = 1L;
+            for (int k = 1; k <= Math.min(n, boxCount); k++) {
+                long sum = binomial[n - 1][k - 1] + binomial[n - 1][k];
+                binomial[n][k] = sum < 0L ? Long.MAX_VALUE : sum;
+            }
+        }
+        this.reach = grid.newStamp();
+        this.region = grid.newStamp();
+        this.flood = grid.newQueue();
+        this.boxes = new int[boxCount];
+        this.sorted = new int[boxCount];
+        this.parent = new int[grid.size];
+    }
+
+    static String solve(char[][] mapData, Coordinate player, Coordinate[] boxes, Coordinate[] goals, long deadline) {
+        GridKernel grid = GridKernel.of(mapData, goals);
+        boolean[] live = liveCells(grid, goals);
+        int liveCount = 0;
+        for (boolean cell : live) {
+            if (cell) {
+                liveCount++;
+            }
+        }
+        for (Coordinate box : boxes) {
+            if (box.x < 0 || box.y < 0 || box.x >= grid.cols || box.y >= grid.rows || !live[grid.cell(box.x, box.y)]) {
+                return null;
+            }
+        }
+        SmallSolver solver = new SmallSolver(grid, live, boxes.length, true);
+        if (liveCount < boxes.length || !solver.fits()) {
+            return null;
+        }
+        solver.bits = new long[(int) ((solver.placements() * solver.floorCount + 63) >>> 6)];
+        return solver.search(player, boxes, deadline);
+    }
+
+    static boolean exhausts(char[][] mapData, Coordinate player, Coordinate[] boxes, Coordinate[] goals, long deadline) {
+        GridKernel grid = GridKernel.of(mapData, goals);
+        boolean[] live = liveCells(grid, goals);
+        for (Coordinate box : boxes) {
+            if (box.x < 0 || box.y < 0 || box.x >= grid.cols || box.y >= grid.rows || !live[grid.cell(box.x, box.y)]) {
+                return true;
+            }
+        }
+        SmallSolver solver = new SmallSolver(grid, live, boxes.length, false);
+        long placements = solver.placements();
+        if (placements == Long.MAX_VALUE || placements > Long.MAX_VALUE / solver.floorCount) {
+            return false;
+        }
+        if (solver.fits()) {
+            solver.bits = new long[(int) ((placements * solver.floorCount + 63) >>> 6)];
+        } else {
+            solver.table = new long[1 << 16];
+        }
+        return solver.search(player, boxes, deadline) == null && solver.exhausted;
+    }
+
+    static boolean[] liveCells(GridKernel grid, Coordinate[] goals) {
+        boolean[] live = new boolean[grid.size];
+        GridKernel.IntQueue queue = grid.newQueue();
+        for (Coordinate goal : goals) {
+            if (goal.x < 0 || goal.y < 0 || goal.x >= grid.cols || goal.y >= grid.rows) {
+                continue;
+            }
+            int start = grid.cell(goal.x, goal.y);
+            if (live[start]) {
+                continue;
+            }
+            live[start] = true;
+            queue.clear();
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int cell = queue.poll();
+                for (int step : grid.step) {
+                    int from = cell + step;
+                    if (live[from] || grid.wall[from] || grid.wall[from + step]) {
+                        continue;
+                    }
+                    live[from] = true;
+                    queue.add(from);
+                }
+            }
+        }
+        return live;
+    }
+
+    private long placements() {
+        return liveCells.length < boxCount ? 0L : binomial[liveCells.length][boxCount];
+    }
+
+    private boolean fits() {
+        long placements = placements();
+        return placements > 0 && placements <= MAX_BITS / floorCount;
+    }
+
+    private String search(Coordinate start, Coordinate[] startBoxes, long deadline) {
+        for (int i = 0; i < boxCount; i++) {
+            boxes[i] = grid.cell(startBoxes[i].x, startBoxes[i].y);
+        }
+        int startPlayer = grid.cell(start.x, start.y);
+        long startKey = key(normalise(region, startPlayer));
+        visit(startKey);
+        append(startKey, -1L);
+        if (solved()) {
+            return "";
+        }
+        long expanded = 0L;
+        for (head = 0; head < size; head++) {
+            if ((expanded++ & DEADLINE_MASK) == 0 && System.nanoTime() > deadline) {
+                return null;
+            }
+            normalise(reach, decode(keys[head]));
+            for (int i = 0; i < boxCount; i++) {
+                int box = boxes[i];
+                for (int dir = 0; dir < grid.step.length; dir++) {
+                    int step = grid.step[dir];
+                    int dest = box + step;
+                    if (!reach.contains(box - step) || liveIndex[dest] < 0 || isBox(dest)) {
+                        continue;
+                    }
+                    boxes[i] = dest;
+                    if (frozen(dest)) {
+                        boxes[i] = box;
+                        continue;
+                    }
+                    long childKey = key(normalise(region, box));
+                    if (visit(childKey)) {
+                        if (recordPlan ? size == MAX_NODES : stored > MAX_PROOF_STATES) {
+                            return null;
+                        }
+                        append(childKey, ((long) head << 32) | ((long) floorIndex[box] << 2) | dir);
+                        if (solved()) {
+                            return recordPlan ? plan(start, startBoxes, size - 1) : "";
+                        }
+                    }
+                    boxes[i] = box;
+                }
+            }
+        }
+        exhausted = true;
+        return null;
+    }
+
+    private boolean frozen(int cell) {
+        for (int corner = 0; corner < 4; corner++) {
+            int base = cell - (corner & 1) - (corner >> 1) * grid.width;
+            boolean loose = false;
+            boolean solid = true;
+            for (int k = 0; k < 4; k++) {
+                int square = base + (k & 1) + (k >> 1) * grid.width;
+                if (grid.wall[square]) {
+                    continue;
+                }
+                if (!isBox(square)) {
+                    solid = false;
+                    break;
+                }
+                loose |= !grid.goal[square];
+            }
+            if (solid && loose) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean solved() {
+        for (int box : boxes) {
+            if (!goalLive[liveIndex[box]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isBox(int cell) {
+        for (int box : boxes) {
+            if (box == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int normalise(GridKernel.Stamp region, int player) {
+        region.next();
+        region.mark(player);
+        flood.clear();
+        flood.add(player);
+        int min = floorIndex[player];
+        while (!flood.isEmpty()) {
+            int cell = flood.poll();
+            for (int step : grid.step) {
+                int next = cell + step;
+                if (grid.wall[next] || region.contains(next) || isBox(next)) {
+                    continue;
+                }
+                region.mark(next);
+                flood.add(next);
+                min = Math.min(min, floorIndex[next]);
+            }
+        }
+        return min;
+    }
+
+    private long key(int playerRep) {
+        for (int i = 0; i < boxCount; i++) {
+            sorted[i] = liveIndex[boxes[i]];
+        }
+        Arrays.sort(sorted);
+        long rank = 0L;
+        for (int i = 0; i < boxCount; i++) {
+            rank += binomial[sorted[i]][i + 1];
+        }
+        return rank * floorCount + playerRep;
+    }
+
+    private int decode(long key) {
+        long rank = key / floorCount;
+        int playerRep = (int) (key % floorCount);
+        int c = liveCells.length - 1;
+        for (int i = boxCount - 1; i >= 0; i--) {
+            while (binomial[c][i + 1] > rank) {
+                c--;
+            }
+            rank -= binomial[c][i + 1];
+            boxes[i] = liveCells[c];
+            c--;
+        }
+        return floorCells[playerRep];
+    }
+
+    private void append(long key, long link) {
+        if (size == keys.length) {
+            if (!recordPlan && head >= size / 2) {
+                System.arraycopy(keys, head, keys, 0, size - head);
+                size -= head;
+                head = 0;
+            } else {
+                keys = Arrays.copyOf(keys, size * 2);
+                if (recordPlan) {
+                    links = Arrays.copyOf(links, size * 2);
+                }
+            }
+        }
+        keys[size] = key;
+        if (recordPlan) {
+            links[size] = link;
+        }
+        size++;
+    }
+
+    private boolean visit(long key) {
+        if (bits != null) {
+            int word = (int) (key >>> 6);
+            if ((bits[word] & (1L << key)) != 0L) {
+                return false;
+            }
+            bits[word] |= 1L << key;
+            stored++;
+            return true;
+        }
+        if (stored * 2 >= table.length) {
+            long[] old = table;
+            table = new long[old.length * 2];
+            for (long entry : old) {
+                if (entry != 0L) {
+                    insert(entry);
+                }
+            }
+        }
+        if (!insert(key + 1)) {
+            return false;
+        }
+        stored++;
+        return true;
+    }
+
+    private boolean insert(long entry) {
+        int mask = table.length - 1;
+        int slot = (int) (entry * 0x9E3779B97F4A7C15L >>> 40) & mask;
+        while (table[slot] != 0L) {
+            if (table[slot] == entry) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+        return true;
+    }
+
+    private String plan(Coordinate start, Coordinate[] startBoxes, int node) {
+        int count = 0;
+        for (int n = node; links[n] >= 0; n = (int) (links[n] >>> 32)) {
+            count++;
+        }
+        long[] pushes = new long[count];
+        for (int n = node; links[n] >= 0; n = (int) (links[n] >>> 32)) {
+            pushes[--count] = links[n];
+        }
+        for (int i = 0; i < boxCount; i++) {
+            boxes[i] = grid.cell(startBoxes[i].x, startBoxes[i].y);
+        }
+        StringBuilder plan = new StringBuilder();
+        int player = grid.cell(start.x, start.y);
+        for (long push : pushes) {
+            int box = floorCells[(int) (push >>> 2) & 0x3fffffff];
+            int dir = (int) (push & 3);
+            appendWalk(plan, player, box - grid.step[dir]);
+            plan.append(Constants.MOVES[dir]);
+            for (int i = 0; i < boxCount; i++) {
+                if (boxes[i] == box) {
+                    boxes[i] = box + grid.step[dir];
+                }
+            }
+            player = box;
+        }
+        return plan.toString();
+    }
+
+    private void appendWalk(StringBuilder plan, int from, int to) {
+        region.next();
+        region.mark(from);
+        parent[from] = from;
+        flood.clear();
+        flood.add(from);
+        while (!flood.isEmpty() && !region.contains(to)) {
+            int cell = flood.poll();
+            for (int step : grid.step) {
+                int next = cell + step;
+                if (grid.wall[next] || region.contains(next) || isBox(next)) {
+                    continue;
+                }
+                region.mark(next);
+                parent[next] = cell;
+                flood.add(next);
+            }
+        }
+        int length = 0;
+        for (int cell = to; cell != from; cell = parent[cell]) {
+            length++;
+        }
+        char[] walk = new char[length];
+        for (int cell = to; cell != from; cell = parent[cell]) {
+            int delta = cell - parent[cell];
+            int dir = 0;
+            while (grid.step[dir] != delta) {
+                dir++;
+            }
+            walk[--length] = Constants.MOVES[dir];
+        }
+        plan.append(walk);
+    }
+}
@@ -1,12 +1,10 @@
 package solver;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
 
 public class SokoBot {
     private Coordinate player = null;
@@ -15,7 +13,9 @@ public class SokoBot {
     private SearchStats lastStats = SearchStats.empty();
     private SearchOutcome lastOutcome = null;
     private static final int SMALL_PUZZLE_BOX_LIMIT = 4;
+    private static final long SMALL_PUZZLE_TIME_LIMIT_MS = 500L;
     private static final long TOTAL_SOLVE_TIME_LIMIT_MS = 14_800L;
+    private static final long FINISH_RESERVE_MS = 150L;
 
     public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
         long totalBudgetMs = Math.min(Constants.TIME_BUDGET_MS, TOTAL_SOLVE_TIME_LIMIT_MS);
@@ -31,13 +31,28 @@ public class SokoBot {
         StringBuilder combinedPlan = new StringBuilder();
         ReplayValidator.ValidationResult segmentValidation = null;
         Coordinate[] goalCoordinates = extractGoals(mapData, itemsData);
+        if (UnsolvabilityProver.ENABLED) {
+            String reason = UnsolvabilityProver.prove(mapData, extractPlayer(itemsData), extractBoxes(itemsData),
+                    goalCoordinates, solveStart + totalBudgetNanos / 2);
+            if (reason != null) {
+                aggregateStats.markFinish(System.nanoTime(), false, 0, 0, 0);
+                lastStats = aggregateStats.snapshot();
+                lastOutcome = SearchOutcome.unsolvable(reason);
+                return "";
+            }
+        }
         Heuristic.initialize(mapData, goalCoordinates);
         int previousBoxesOnGoals = countBoxesOnGoals(workingItems, mapData);
         int previousPenalty = corridorPenalty(workingItems);
         HashSet<Integer> visitedBoards = new HashSet<>();
         visitedBoards.add(Arrays.deepHashCode(workingItems));
 
-        while (true) {
+        String decomposed = solveByDecomposition(width, height, mapData, itemsData, deadline, aggregateStats);
+        if (decomposed != null) {
+            combinedPlan.append(decomposed);
+        }
+
+        while (decomposed == null) {
             long now = System.nanoTime();
             if (now >= deadline) {
                 break;
@@ -92,6 +107,8 @@ public class SokoBot {
             }
         }
 
+        DeadlockPatterns.save();
+
         String finalPlan = combinedPlan.toString();
         ReplayValidator.ValidationResult finalValidation = ReplayValidator.validate(mapData, itemsData, finalPlan);
         long solveEnd = System.nanoTime();
@@ -108,11 +125,72 @@ public class SokoBot {
         return finalPlan;
     }
 
+    private String solveByDecomposition(int width,
+                                        int height,
+                                        char[][] mapData,
+                                        char[][] itemsData,
+                                        long deadline,
+                                        SearchStats aggregateStats) {
+        List<Decomposition.Group> groups = Decomposition.plan(mapData, extractBoxes(itemsData),
+                extractGoals(mapData, itemsData));
+        if (groups == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        long budgetEnd = start + (deadline - start) / 2;
+        char[][] working = cloneItems(itemsData);
+        StringBuilder plan = new StringBuilder();
+        List<Decomposition.Group> pending = new ArrayList<>(groups);
+        int pendingBoxes = 0;
+        for (Decomposition.Group group : pending) {
+            pendingBoxes += group.boxes.size();
+        }
+        boolean progress = true;
+        while (!pending.isEmpty() && progress) {
+            progress = false;
+            for (Iterator<Decomposition.Group> it = pending.iterator(); it.hasNext(); ) {
+                Decomposition.Group group = it.next();
+                long now = System.nanoTime();
+                if (now >= budgetEnd) {
+                    return null;
+                }
+                long shareMs = Math.max(1L, (budgetEnd - now) / 1_000_000L * group.boxes.size() / pendingBoxes);
+                SolutionSegment segment = runSingleSearch(width, height,
+                        Decomposition.subMap(mapData, working, group),
+                        Decomposition.subItems(working, group),
+                        shareMs);
+                aggregateStats.accumulate(segment.stats);
+                if (segment.validation == null || !segment.validation.solved) {
+                    continue;
+                }
+                ReplayValidator.ValidationResult merged = ReplayValidator.validate(mapData, working, segment.plan);
+                if (!merged.fullyValid || merged.finalItems == null) {
+                    continue;
+                }
+                working = cloneItems(merged.finalItems);
+                plan.append(segment.plan);
+                pendingBoxes -= group.boxes.size();
+                it.remove();
+                progress = true;
+            }
+        }
+        String result = plan.toString();
+        ReplayValidator.ValidationResult full = ReplayValidator.validate(mapData, itemsData, result);
+        boolean solved = pending.isEmpty() && full.fullyValid && full.solved;
+        if (Constants.DEBUG_LOG) {
+            System.out.println("decomposition groups=" + groups.size()
+                    + " solved=" + solved
+                    + " len=" + result.length());
+        }
+        return solved ? result : null;
+    }
+
     private SolutionSegment runSingleSearch(int width,
                                             int height,
                                             char[][] mapData,
                                             char[][] itemsData,
                                             long timeBudgetMs) {
+        long callStart = System.nanoTime();
         player = null;
         boxList.clear();
         goalList.clear();
@@ -125,10 +203,14 @@ public class SokoBot {
 
         Components.build(mapData, goals);
         Rooms.build(mapData, goals);
+        GoalRooms.build(mapData, goals);
 
         long segmentStart = System.nanoTime();
 
-        String bfsPlan = trySolveSmallPuzzle(mapData, boxes, player, goals);
+        long smallBudgetMs = Math.min(SMALL_PUZZLE_TIME_LIMIT_MS, Math.max(1L, timeBudgetMs) / 2);
+        String bfsPlan = SearchMode.is(SearchMode.GREEDY)
+                ? trySolveSmallPuzzle(mapData, boxes, player, goals, segmentStart + smallBudgetMs * 1_000_000L)
+                : null;
         if (bfsPlan != null) {
             ReplayValidator.ValidationResult validation = ReplayValidator.validate(mapData, itemsData, bfsPlan);
             SearchStats stats = new SearchStats();
@@ -142,9 +224,14 @@ public class SokoBot {
         }
 
         Heuristic.initialize(mapData, goals);
-        State initial = State.initial(player, boxes, Heuristic.evaluate(player, boxes));
-
-        GBFS solver = new GBFS(mapData, goals, timeBudgetMs);
+        State initial = State.initial(GridKernel.of(mapData, goals), player, boxes,
+                Heuristic.evaluate(player, boxes));
+
+        // The engine's clock starts at search(), so charge it for the setup above and keep a little back
+        // for replaying and validating whatever plan it returns.
+        long setupMs = (System.nanoTime() - callStart) / 1_000_000L;
+        long searchBudgetMs = Math.max(1L, timeBudgetMs - setupMs - Math.min(FINISH_RESERVE_MS, timeBudgetMs / 10));
+        SearchEngine solver = createEngine(mapData, goals, searchBudgetMs);
         SearchOutcome rawOutcome = solver.search(initial);
         SearchStats stats = solver.getStatistics();
 
@@ -174,6 +261,22 @@ public class SokoBot {
         return new SolutionSegment(planToReturn, stats, adjustedOutcome, validation);
     }
 
+    private static SearchEngine createEngine(char[][] mapData, Coordinate[] goals, long timeBudgetMs) {
+        if (SearchMode.is(SearchMode.IDA)) {
+            return new IdaStar(mapData, goals, timeBudgetMs);
+        }
+        if (SearchMode.is(SearchMode.BIDIRECTIONAL)) {
+            return new Bidirectional(mapData, goals, timeBudgetMs);
+        }
+        if (SearchMode.is(SearchMode.EXTERNAL)) {
+            return new ExternalSearch(mapData, goals, timeBudgetMs);
+        }
+        if (SearchMode.is(SearchMode.NESTED)) {
+            return new NestedMonteCarlo(mapData, goals, timeBudgetMs);
+        }
+        return new GBFS(mapData, goals, timeBudgetMs);
+    }
+
     private static char[][] cloneItems(char[][] source) {
         if (source == null) {
             return new char[0][0];
@@ -260,112 +363,26 @@ public class SokoBot {
         return lastOutcome;
     }
 
-    private String trySolveSmallPuzzle(char[][] mapData, Coordinate[] boxes, Coordinate player, Coordinate[] goals) {
+    private String trySolveSmallPuzzle(char[][] mapData, Coordinate[] boxes, Coordinate player, Coordinate[] goals,
+                                       long deadline) {
         if (boxes.length == 0) {
             return "";
         }
         if (boxes.length > SMALL_PUZZLE_BOX_LIMIT) {
             return null;
         }
-        return breadthFirstSolve(mapData, player, boxes, goals);
+        return SmallSolver.solve(mapData, player, boxes, goals, deadline);
     }
 
-    private String breadthFirstSolve(char[][] mapData, Coordinate startPlayer, Coordinate[] startBoxes, Coordinate[] goals) {
-        int rows = mapData.length;
-        int cols = rows == 0 ? 0 : mapData[0].length;
-        Queue<BfsNode> queue = new ArrayDeque<>();
-        Coordinate[] initialBoxes = copyAndSort(startBoxes);
-        long initialSignature = encodeState(startPlayer, initialBoxes);
-        Set<Long> visited = new HashSet<>();
-        visited.add(initialSignature);
-        queue.add(new BfsNode(startPlayer, initialBoxes, ""));
-
-        while (!queue.isEmpty()) {
-            BfsNode node = queue.remove();
-            if (isGoalState(node.boxes, goals)) {
-                return node.path;
-            }
-            for (int dir = 0; dir < Constants.DIRECTION_X.length; dir++) {
-                int nx = node.player.x + Constants.DIRECTION_X[dir];
-                int ny = node.player.y + Constants.DIRECTION_Y[dir];
-                if (!inBounds(nx, ny, cols, rows)) {
-                    continue;
-                }
-                if (mapData[ny][nx] == Constants.WALL) {
-                    continue;
-                }
-                int boxIdx = indexOfBox(node.boxes, nx, ny);
-                if (boxIdx >= 0) {
-                    int destX = nx + Constants.DIRECTION_X[dir];
-                    int destY = ny + Constants.DIRECTION_Y[dir];
-                    if (!inBounds(destX, destY, cols, rows)) {
-                        continue;
-                    }
-                    if (mapData[destY][destX] == Constants.WALL) {
-                        continue;
-                    }
-                    if (indexOfBox(node.boxes, destX, destY) >= 0) {
-                        continue;
-                    }
-                    Coordinate[] nextBoxes = node.boxes.clone();
-                    nextBoxes[boxIdx] = new Coordinate(destX, destY);
-                    sortBoxes(nextBoxes);
-                    Coordinate nextPlayer = new Coordinate(nx, ny);
-                    long sig = encodeState(nextPlayer, nextBoxes);
-                    if (visited.add(sig)) {
-                        queue.add(new BfsNode(nextPlayer, nextBoxes, node.path + Constants.MOVES[dir]));
-                    }
-                } else {
-                    Coordinate nextPlayer = new Coordinate(nx, ny);
-                    long sig = encodeState(nextPlayer, node.boxes);
-                    if (visited.add(sig)) {
-                        queue.add(new BfsNode(nextPlayer, node.boxes, node.path + Constants.MOVES[dir]));
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
-    private static boolean inBounds(int x, int y, int cols, int rows) {
-        return x >= 0 && x < cols && y >= 0 && y < rows;
-    }
-
-    private static int indexOfBox(Coordinate[] boxes, int x, int y) {
-        for (int i = 0; i < boxes.length; i++) {
-            Coordinate box = boxes[i];
-            if (box.x == x && box.y == y) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
-    private static boolean isGoalState(Coordinate[] boxes, Coordinate[] goals) {
-        for (Coordinate box : boxes) {
-            boolean onGoal = false;
-            for (Coordinate goal : goals) {
-                if (box.x == goal.x && box.y == goal.y) {
-                    onGoal = true;
-                    break;
+    private static Coordinate extractPlayer(char[][] items) {
+        for (int y = 0; y < items.length; y++) {
+            for (int x = 0; x < items[y].length; x++) {
+                if (items[y][x] == Constants.PLAYER || items[y][x] == Constants.PLAYER_ON_GOAL) {
+                    return new Coordinate(x, y);
                 }
             }
-            if (!onGoal) {
-                return false;
-            }
         }
-        return true;
-    }
-
-    private static long encodeState(Coordinate player, Coordinate[] boxes) {
-        long hash = 1469598103934665603L;
-        hash = (hash ^ player.x) * 1099511628211L;
-        hash = (hash ^ player.y) * 1099511628211L;
-        for (Coordinate box : boxes) {
-            hash = (hash ^ box.x) * 1099511628211L;
-            hash = (hash ^ box.y) * 1099511628211L;
-        }
-        return hash;
+        throw new IllegalStateException("Map does not contain a player start position");
     }
 
     private static Coordinate[] extractBoxes(char[][] items) {
@@ -408,33 +425,4 @@ public class SokoBot {
         }
         return Heuristic.corridorEntrancePenalty(boxes);
     }
-
-    private static Coordinate[] copyAndSort(Coordinate[] boxes) {
-        Coordinate[] copy = new Coordinate[boxes.length];
-        for (int i = 0; i < boxes.length; i++) {
-            Coordinate b = boxes[i];
-            copy[i] = new Coordinate(b.x, b.y);
-        }
-        sortBoxes(copy);
-        return copy;
-    }
-
-    private static void sortBoxes(Coordinate[] boxes) {
-        java.util.Arrays.sort(boxes);
-    }
-
-    private static final class BfsNode {
-        final Coordinate player;
-        final Coordinate[] boxes;
-        final String path;
-
-        BfsNode(Coordinate player, Coordinate[] boxes, String path) {
-            this.player = player;
-            this.boxes = boxes;
-            this.path = path;
-        }
-    }
 }
-
-
-
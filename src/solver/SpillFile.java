@@ -0,0 +1,92 @@
+package solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class SpillFile implements Closeable {
+    private static final int TAIL_WORDS = 1 << 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long[] tail = new long[TAIL_WORDS];
+    private int tailCount;
+    private long flushed;
+
+    SpillFile(String prefix) {
+        try {
+            this.path = Files.createTempFile(prefix, ".bin");
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    long append(long[] words, int from, int count) {
+        long offset = flushed + tailCount;
+        while (count > 0) {
+            int chunk = Math.min(count, TAIL_WORDS - tailCount);
+            System.arraycopy(words, from, tail, tailCount, chunk);
+            tailCount += chunk;
+            from += chunk;
+            count -= chunk;
+            if (tailCount == TAIL_WORDS) {
+                flush();
+            }
+        }
+        return offset;
+    }
+
+    void read(long offset, long[] dst, int dstPos, int count) {
+        if (offset < flushed) {
+            int fromFile = (int) Math.min(count, flushed - offset);
+            try {
+                LongBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset * Long.BYTES,
+                        (long) fromFile * Long.BYTES).asLongBuffer();
+                mapped.get(dst, dstPos, fromFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            offset += fromFile;
+            dstPos += fromFile;
+            count -= fromFile;
+        }
+        if (count > 0) {
+            System.arraycopy(tail, (int) (offset - flushed), dst, dstPos, count);
+        }
+    }
+
+    long words() {
+        return flushed + tailCount;
+    }
+
+    private void flush() {
+        if (tailCount == 0) {
+            return;
+        }
+        try {
+            LongBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, flushed * Long.BYTES,
+                    (long) tailCount * Long.BYTES).asLongBuffer();
+            mapped.put(tail, 0, tailCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        flushed += tailCount;
+        tailCount = 0;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException ignore) {
+        }
+    }
+}
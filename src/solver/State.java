@@ -11,6 +11,7 @@ public final class State {
     private final Coordinate[] boxes;
     private final State parent;
     private final char lastMove;
+    private final int lastMoveRun;
     private final boolean lastMovePush;
     private final int depth;
     private final int pushes;
@@ -24,11 +25,17 @@ public final class State {
     private final int boxesOnGoals;
     private final int lastPushProgress;
     private final int corridorEntrancePenalty;
+    private final GridKernel board;
+    private long[] reach;
+    private long[] boxBits;
+    private volatile long parkedGoals = -1L;
 
-    private State(Coordinate player,
+    private State(GridKernel board,
+                  Coordinate player,
                   Coordinate[] boxes,
                   State parent,
                   char lastMove,
+                  int lastMoveRun,
                   boolean lastMovePush,
                   int depth,
                   int pushes,
@@ -41,10 +48,12 @@ public final class State {
                   int boxesOnGoals,
                   int lastPushProgress,
                   int corridorEntrancePenalty) {
+        this.board = board;
         this.player = player;
         this.boxes = boxes;
         this.parent = parent;
         this.lastMove = lastMove;
+        this.lastMoveRun = lastMoveRun;
         this.lastMovePush = lastMovePush;
         this.depth = depth;
         this.pushes = pushes;
@@ -60,14 +69,16 @@ public final class State {
         this.goalDistanceSquaredSum = goalDistanceSquaredSum;
     }
 
-    public static State initial(Coordinate player, Coordinate[] boxes, int heuristic) {
+    public static State initial(GridKernel board, Coordinate player, Coordinate[] boxes, int heuristic) {
         Coordinate[] orderedBoxes = copyAndSort(boxes);
         long hash = computeHash(player, orderedBoxes);
         long goalDistanceSquaredSum = computeGoalDistanceSquaredSum(orderedBoxes);
-        return new State(player,
+        return new State(board,
+                player,
                 orderedBoxes,
                 null,
                 '\0',
+                0,
                 false,
                 0,
                 0,
@@ -88,6 +99,17 @@ public final class State {
                               char move,
                               int heuristic,
                               char[] prePushWalk) {
+        return macro(parent, nextPlayer, updatedBoxes, move, 1, 1, heuristic, prePushWalk);
+    }
+
+    public static State macro(State parent,
+                              Coordinate nextPlayer,
+                              Coordinate[] updatedBoxes,
+                              char move,
+                              int moveRun,
+                              int pushCount,
+                              int heuristic,
+                              char[] prePushWalk) {
         Coordinate[] ordered = copyAndSort(updatedBoxes);
         long insertion = INSERTION_SEQUENCE.getAndIncrement();
         long hash = computeHash(nextPlayer, ordered);
@@ -98,13 +120,15 @@ public final class State {
         int boxesOnGoals = countBoxesOnGoals(ordered);
         int lastPushProgress = boxesOnGoals - parent.boxesOnGoals;
         int corridorPenalty = Heuristic.corridorEntrancePenalty(ordered);
-        return new State(nextPlayer,
+        return new State(parent.board,
+                nextPlayer,
                 ordered,
                 parent,
                 move,
+                moveRun,
                 true,
-                parent.depth + additionalDepth + 1,
-                parent.pushes + 1,
+                parent.depth + additionalDepth + moveRun,
+                parent.pushes + pushCount,
                 heuristic,
                 insertion,
                 hash,
@@ -182,6 +206,37 @@ public final class State {
         return lastMove;
     }
 
+    long[] boxBits() {
+        if (boxBits == null && board != null) {
+            boxBits = board.boxBits(boxes);
+        }
+        return boxBits;
+    }
+
+    long getParkedGoals() {
+        return parkedGoals;
+    }
+
+    void setParkedGoals(long parkedGoals) {
+        this.parkedGoals = parkedGoals;
+    }
+
+    long[] getReach() {
+        return reach;
+    }
+
+    void setReach(long[] reach) {
+        this.reach = reach;
+    }
+
+    public int getLastMoveRun() {
+        return lastMoveRun;
+    }
+
+    public char[] getPrePushWalk() {
+        return prePushWalk.clone();
+    }
+
     public boolean wasPush() {
         return lastMovePush;
     }
@@ -218,10 +273,12 @@ public final class State {
         if (this.heuristic == newHeuristic) {
             return this;
         }
-        return new State(this.player,
+        State copy = new State(this.board,
+                this.player,
                 this.boxes,
                 this.parent,
                 this.lastMove,
+                this.lastMoveRun,
                 this.lastMovePush,
                 this.depth,
                 this.pushes,
@@ -234,6 +291,8 @@ public final class State {
                 this.boxesOnGoals,
                 this.lastPushProgress,
                 this.corridorEntrancePenalty);
+        copy.parkedGoals = this.parkedGoals;
+        return copy;
     }
 
     public int getFCost() {
@@ -249,6 +308,10 @@ public final class State {
     }
 
     public boolean isGoal(Coordinate[] goals) {
+        long[] bits = boxBits();
+        if (bits != null && board.hasGoals(goals)) {
+            return board.allOnGoals(bits);
+        }
         for (Coordinate box : boxes) {
             boolean onGoal = false;
             for (Coordinate goal : goals) {
@@ -280,7 +343,9 @@ public final class State {
         for (char c : prePushWalk) {
             builder.append(c);
         }
-        builder.append(lastMove);
+        for (int i = 0; i < lastMoveRun; i++) {
+            builder.append(lastMove);
+        }
     }
 
     public int getMovedBoxIndex() {
@@ -288,6 +353,10 @@ public final class State {
     }
 
     public boolean hasBoxAt(int x, int y) {
+        long[] bits = boxBits();
+        if (bits != null) {
+            return board.hasBox(bits, x, y);
+        }
         for (Coordinate c : boxes) {
             if (c.x == x && c.y == y) {
                 return true;
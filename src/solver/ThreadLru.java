@@ -0,0 +1,52 @@
+package solver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+final class ThreadLru<V> {
+    private final ThreadLocal<Table<V>> tables;
+    private volatile int generation;
+
+    ThreadLru(int capacity) {
+        this.tables = ThreadLocal.withInitial(() -> new Table<>(capacity));
+    }
+
+    V get(long key) {
+        return table().get(key);
+    }
+
+    void put(long key, V value) {
+        table().put(key, value);
+    }
+
+    synchronized void clear() {
+        generation++;
+    }
+
+    private Table<V> table() {
+        Table<V> table = tables.get();
+        int current = generation;
+        if (table.generation != current) {
+            table.clear();
+            table.generation = current;
+        }
+        return table;
+    }
+
+    private static final class Table<V> extends LinkedHashMap<Long, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private int generation;
+
+        Table(int capacity) {
+            super(capacity, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
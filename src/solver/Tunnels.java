@@ -0,0 +1,130 @@
+package solver;
+
+import java.util.Arrays;
+
+final class Tunnels {
+    private static GridKernel grid;
+    private static int[] exit = new int[0];
+    private static int[] length = new int[0];
+    private static int[] penaltyStep = new int[0];
+    private static int[] penaltyGoal = new int[0];
+
+    private Tunnels() {}
+
+    static synchronized void build(GridKernel kernel) {
+        grid = kernel;
+        int dirs = kernel.step.length;
+        exit = new int[kernel.size * dirs];
+        length = new int[kernel.size * dirs];
+        penaltyStep = new int[kernel.size];
+        penaltyGoal = new int[kernel.size];
+        Arrays.fill(penaltyGoal, -1);
+        for (int cell = 0; cell < kernel.size; cell++) {
+            if (kernel.wall[cell]) {
+                continue;
+            }
+            for (int dir = 0; dir < dirs; dir++) {
+                int end = cell;
+                int steps = 0;
+                while (!kernel.goal[end] && isTunnel(end, dir) && !kernel.wall[end + kernel.step[dir]]) {
+                    end += kernel.step[dir];
+                    steps++;
+                }
+                exit[cell * dirs + dir] = end;
+                length[cell * dirs + dir] = steps;
+            }
+            buildPenalty(cell);
+        }
+    }
+
+    static synchronized void clear() {
+        grid = null;
+        exit = new int[0];
+        length = new int[0];
+        penaltyStep = new int[0];
+        penaltyGoal = new int[0];
+    }
+
+    static int exit(int cell, int dir) {
+        return exit[cell * grid.step.length + dir];
+    }
+
+    static int length(int cell, int dir) {
+        return length[cell * grid.step.length + dir];
+    }
+
+    static int corridorPenalty(Coordinate[] boxes) {
+        if (grid == null) {
+            return 0;
+        }
+        long[] occupied = grid.boxBits(boxes);
+        int penalty = 0;
+        for (Coordinate box : boxes) {
+            if (box == null || !grid.contains(box.x, box.y)) {
+                continue;
+            }
+            int cell = grid.cell(box.x, box.y);
+            int goalSteps = penaltyGoal[cell];
+            if (goalSteps <= 0) {
+                continue;
+            }
+            int step = penaltyStep[cell];
+            boolean blocked = false;
+            for (int i = 1; i <= goalSteps && !blocked; i++) {
+                blocked = occupied == null ? hasBoxAt(boxes, cell + i * step) : CellBits.get(occupied, cell + i * step);
+            }
+            if (!blocked) {
+                penalty++;
+            }
+        }
+        return penalty;
+    }
+
+    private static void buildPenalty(int cell) {
+        int width = grid.width;
+        boolean vertical = grid.wall[cell - 1] && grid.wall[cell + 1];
+        boolean horizontal = !vertical && grid.wall[cell - width] && grid.wall[cell + width];
+        if (!vertical && !horizontal) {
+            return;
+        }
+        int back = vertical ? -width : -1;
+        int step = narrowRun(cell, back, vertical) <= narrowRun(cell, -back, vertical) ? back : -back;
+        penaltyStep[cell] = step;
+        int steps = 0;
+        for (int c = cell + step; !grid.wall[c] && isNarrow(c, vertical); c += step) {
+            steps++;
+            if (grid.goal[c]) {
+                penaltyGoal[cell] = steps;
+                return;
+            }
+        }
+    }
+
+    private static int narrowRun(int cell, int step, boolean vertical) {
+        int run = 0;
+        for (int c = cell + step; !grid.wall[c] && isNarrow(c, vertical); c += step) {
+            run++;
+        }
+        return run;
+    }
+
+    private static boolean isNarrow(int cell, boolean vertical) {
+        int side = vertical ? 1 : grid.width;
+        return grid.wall[cell - side] && grid.wall[cell + side];
+    }
+
+    private static boolean isTunnel(int cell, int dir) {
+        return isNarrow(cell, Constants.DIRECTION_X[dir] == 0);
+    }
+
+    private static boolean hasBoxAt(Coordinate[] boxes, int cell) {
+        int x = grid.x(cell);
+        int y = grid.y(cell);
+        for (Coordinate box : boxes) {
+            if (box != null && box.x == x && box.y == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,122 @@
+package solver;
+
+import java.util.Arrays;
+
+final class UnsolvabilityProver {
+    static boolean ENABLED = false;
+
+    private static final long EXHAUSTIVE_LIMIT_NANOS = 250_000_000L;
+
+    private UnsolvabilityProver() {}
+
+    static String prove(char[][] mapData, Coordinate player, Coordinate[] boxes, Coordinate[] goals, long deadline) {
+        if (boxes.length > goals.length) {
+            return "boxes=" + boxes.length + " goals=" + goals.length;
+        }
+        String reason = componentCounts(mapData, boxes, goals);
+        if (reason == null) {
+            reason = coverage(mapData, boxes, goals);
+        }
+        long cap = Math.min(deadline, System.nanoTime() + EXHAUSTIVE_LIMIT_NANOS);
+        if (reason == null && SmallSolver.exhausts(mapData, player, boxes, goals, cap)) {
+            reason = "exhaustive";
+        }
+        return reason;
+    }
+
+    private static String componentCounts(char[][] mapData, Coordinate[] boxes, Coordinate[] goals) {
+        Components.build(mapData, goals);
+        int[] boxesInComp = new int[Components.goalsInComp.length];
+        for (Coordinate box : boxes) {
+            boxesInComp[Components.compId[box.y][box.x]]++;
+        }
+        for (int c = 0; c < boxesInComp.length; c++) {
+            if (boxesInComp[c] > Components.goalsInComp[c]) {
+                return "component=" + c + " boxes=" + boxesInComp[c] + " goals=" + Components.goalsInComp[c];
+            }
+        }
+        return null;
+    }
+
+    private static String coverage(char[][] mapData, Coordinate[] boxes, Coordinate[] goals) {
+        GridKernel grid = GridKernel.of(mapData, goals);
+        boolean[][] reaches = new boolean[boxes.length][goals.length];
+        GridKernel.Stamp zone = grid.newStamp();
+        GridKernel.IntQueue queue = grid.newQueue();
+        for (int g = 0; g < goals.length; g++) {
+            pullZone(grid, grid.cell(goals[g].x, goals[g].y), zone, queue);
+            for (int b = 0; b < boxes.length; b++) {
+                reaches[b][g] = zone.contains(grid.cell(boxes[b].x, boxes[b].y));
+            }
+        }
+        for (int b = 0; b < boxes.length; b++) {
+            boolean any = false;
+            for (boolean r : reaches[b]) {
+                any |= r;
+            }
+            if (!any) {
+                return "dead-square=" + boxes[b].x + "," + boxes[b].y;
+            }
+        }
+        if (boxes.length == goals.length) {
+            Rooms.build(mapData, goals);
+            for (int room = 0; room < Rooms.goalsInRoom.length; room++) {
+                if (Rooms.goalsInRoom[room] == 0) {
+                    continue;
+                }
+                int feeders = 0;
+                for (int b = 0; b < boxes.length; b++) {
+                    for (int g = 0; g < goals.length; g++) {
+                        if (reaches[b][g] && Rooms.roomId[goals[g].y][goals[g].x] == room) {
+                            feeders++;
+                            break;
+                        }
+                    }
+                }
+                if (feeders < Rooms.goalsInRoom[room]) {
+                    return "room=" + room + " goals=" + Rooms.goalsInRoom[room] + " feeders=" + feeders;
+                }
+            }
+        }
+        int[] owner = new int[goals.length];
+        Arrays.fill(owner, -1);
+        for (int b = 0; b < boxes.length; b++) {
+            if (!augment(reaches, b, owner, new boolean[goals.length])) {
+                return "matching box=" + boxes[b].x + "," + boxes[b].y;
+            }
+        }
+        return null;
+    }
+
+    private static void pullZone(GridKernel grid, int goal, GridKernel.Stamp zone, GridKernel.IntQueue queue) {
+        zone.next();
+        zone.mark(goal);
+        queue.clear();
+        queue.add(goal);
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            for (int step : grid.step) {
+                int from = cell + step;
+                if (zone.contains(from) || grid.wall[from] || grid.wall[from + step]) {
+                    continue;
+                }
+                zone.mark(from);
+                queue.add(from);
+            }
+        }
+    }
+
+    private static boolean augment(boolean[][] reaches, int box, int[] owner, boolean[] seen) {
+        for (int g = 0; g < owner.length; g++) {
+            if (!reaches[box][g] || seen[g]) {
+                continue;
+            }
+            seen[g] = true;
+            if (owner[g] < 0 || augment(reaches, owner[g], owner, seen)) {
+                owner[g] = box;
+                return true;
+            }
+        }
+        return false;
+    }
+}